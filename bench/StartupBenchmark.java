@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class measures wall-clock time of {@code ftm} from start of JVM to its exit.
+ * <p>
+ * Each configuration is started {@code runs} times as a new process on a temporary file,
+ * with a zero shift so the file keeps its times, after a few warm-up runs which fill the OS cache.
+ * <p>
+ * Usage: {@code java -cp file_modify.jar:bench StartupBenchmark [runs] [path of CDS archive]}
+ */
+public class StartupBenchmark {
+
+	private static final int WARM_UP_RUNS = 3;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		String archive = args.length > 1 ? args[1] : null;
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		String classPath = System.getProperty("java.class.path");
+		Path file = Files.createTempFile("ftm", ".startup");
+		try {
+			String[] command = {"-Il", "-s", "0", "-f", file.toString()};
+			measure("FileTimeMod", runs, concat(List.of(java, "-cp", classPath, "FileTimeMod"), command));
+			measure("FastLauncher", runs, concat(List.of(java, "-cp", classPath, "FastLauncher"), command));
+			if (archive != null) {
+				measure("FastLauncher + CDS", runs, concat(List.of(java, "-XX:SharedArchiveFile=" + archive,
+						"-Xshare:auto", "-cp", classPath, "FastLauncher"), command));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<String> concat(List<String> first, String[] second) {
+		List<String> result = new ArrayList<>(first);
+		result.addAll(Arrays.asList(second));
+		return result;
+	}
+
+	private static void measure(String name, int runs, List<String> command)
+			throws IOException, InterruptedException {
+		for (int i = 0; i < WARM_UP_RUNS; i++) {
+			start(command);
+		}
+		long[] times = new long[runs];
+		for (int i = 0; i < runs; i++) {
+			times[i] = start(command);
+		}
+		Arrays.sort(times);
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		System.out.printf("%-20s min %7.2f ms, median %7.2f ms, mean %7.2f ms, max %7.2f ms%n", name,
+				times[0] / 1e6, times[runs / 2] / 1e6, total / 1e6 / runs, times[runs - 1] / 1e6);
+	}
+
+	/**
+	 * @return nanoseconds from starting process to its exit
+	 */
+	private static long start(List<String> command) throws IOException, InterruptedException {
+		ProcessBuilder builder = new ProcessBuilder(command)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectError(ProcessBuilder.Redirect.INHERIT);
+		long start = System.nanoTime();
+		Process process = builder.start();
+		int status = process.waitFor();
+		long time = System.nanoTime() - start;
+		if (status != 0) {
+			throw new IOException("command failed with status " + status + ": " + command);
+		}
+		return time;
+	}
+}
@@ -0,0 +1,212 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * This class measures {@code ftm -r} end to end on a synthetic tree of a real file system.
+ * <p>
+ * A tree of {@code depth} levels of {@code fan-out} directories each is generated, files are spread over
+ * directories of the last level and get a last modified time of 2020, so shifts stay in range.
+ * Each configuration runs in this JVM through {@code FileTimeMod.process}, increase and decrease of one day
+ * one after the other, so the tree keeps its times, after one warm-up pair. Thread count is swept.
+ * Only last modified time is shifted, creation time can't be set on Linux, so shifting it too is the
+ * same work there.
+ * <p>
+ * Each run reports files per second, p50 and p99 latency of a whole file from {@code --metrics}, which are
+ * upper bounds within a factor of 2, peak resident set size from {@code VmHWM} of {@code /proc/self/status},
+ * reset before each run where the kernel supports it, and peak heap of the run. Nothing leaves the machine.
+ * <p>
+ * Use a tmpfs directory, e.g. {@code /dev/shm}, to measure ftm instead of the disk, 10 million files need
+ * a few GB of memory there.
+ * <p>
+ * Usage: {@code java -cp file_modify.jar:bench TreeBenchmark [files] [depth] [fan-out] [threads,...] [directory]}
+ */
+public class TreeBenchmark {
+
+	private static final FileTime INITIAL_TIME = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+	private static final Pattern FILE_LATENCY = Pattern.compile(
+			"\"file\":\\{\"count\":(\\d+),\"totalNanos\":\\d+,\"p50Nanos\":(\\d+),\"p99Nanos\":(\\d+)");
+	private static final Pattern PEAK_RSS = Pattern.compile("VmHWM:\\s+(\\d+) kB");
+
+	public static void main(String[] args) throws Exception {
+		int files = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		int fanOut = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int[] threads = args.length > 3 ? parseThreads(args[3]) : defaultThreads();
+		Path parent = Path.of(args.length > 4 ? args[4] : System.getProperty("java.io.tmpdir"));
+		Path root = Files.createTempDirectory(parent, "ftm-tree");
+		try {
+			long start = System.nanoTime();
+			long generated = generate(root, files, depth, fanOut);
+			System.out.printf(Locale.ROOT, "generated %d files in %d directories under %s in %.1f s%n", generated,
+					directories(depth, fanOut), root, (System.nanoTime() - start) / 1e9);
+			System.out.printf("%-8s %-8s %10s %12s %10s %10s %10s %10s%n", "threads", "shift",
+					"files", "files/s", "p50 us", "p99 us", "rss MB", "heap MB");
+			for (int count : threads) {
+				// warm-up pair, then measured pair
+				run(root, count, true, false);
+				run(root, count, false, false);
+				run(root, count, true, true);
+				run(root, count, false, true);
+			}
+		} finally {
+			delete(root);
+		}
+	}
+
+	/**
+	 * @return number of files created
+	 */
+	private static long generate(Path root, int files, int depth, int fanOut) throws IOException {
+		int leaves = (int) Math.pow(fanOut, depth);
+		int perLeaf = (files + leaves - 1) / leaves;
+		return IntStream.range(0, leaves).parallel().mapToLong(leaf -> {
+			Path directory = root;
+			for (int level = 0, rest = leaf; level < depth; level++, rest /= fanOut) {
+				directory = directory.resolve("d" + rest % fanOut);
+			}
+			int count = Math.max(0, Math.min(perLeaf, files - leaf * perLeaf));
+			try {
+				Files.createDirectories(directory);
+				for (int i = 0; i < count; i++) {
+					Path file = Files.createFile(directory.resolve("f" + i));
+					Files.setLastModifiedTime(file, INITIAL_TIME);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("generate tree failed: " + e.getMessage(), e);
+			}
+			return count;
+		}).sum();
+	}
+
+	private static long directories(int depth, int fanOut) {
+		long total = 0;
+		for (int level = 1; level <= depth; level++) {
+			total += (long) Math.pow(fanOut, level);
+		}
+		return total;
+	}
+
+	/**
+	 * run one shift of last modified time of one day on the whole tree, and print its result if it is reported
+	 */
+	private static void run(Path root, int threads, boolean increase, boolean report) throws Exception {
+		String operation = increase ? "I" : "D";
+		String[] command = {"-" + operation + "lr", "-d", "1", "-p", String.valueOf(threads),
+				"--output", "quiet", "--metrics", "json", "-f", root.toString()};
+		resetPeaks();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+		long start = System.nanoTime();
+		FileTimeMod.process(command, root, out, System.err);
+		long nanos = System.nanoTime() - start;
+		Matcher matcher = FILE_LATENCY.matcher(output.toString(StandardCharsets.UTF_8));
+		if (!matcher.find()) {
+			throw new IllegalStateException("metrics are not printed: " + output);
+		}
+		if (!report) {
+			return;
+		}
+		long files = Long.parseLong(matcher.group(1));
+		System.out.printf(Locale.ROOT, "%-8d %-8s %10d %12.0f %10.1f %10.1f %10.1f %10.1f%n", threads,
+				increase ? "+1 day" : "-1 day", files, files / (nanos / 1e9), Long.parseLong(matcher.group(2)) / 1e3,
+				Long.parseLong(matcher.group(3)) / 1e3, peakRss() / 1024.0, peakHeap() / 1048576.0);
+	}
+
+	/**
+	 * reset peak of resident set size and peaks of heap pools, so peaks of next run are its own
+	 */
+	private static void resetPeaks() {
+		try {
+			// 5 resets peak resident set size, supported since Linux 4.0
+			Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+		} catch (IOException e) {
+			// peak is of whole process then
+		}
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @return peak resident set size in kB, 0 if it can't be read
+	 */
+	private static long peakRss() {
+		try {
+			Matcher matcher = PEAK_RSS.matcher(Files.readString(Path.of("/proc/self/status")));
+			return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return sum of peaks of heap pools in bytes
+	 */
+	private static long peakHeap() {
+		long total = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				total += pool.getPeakUsage().getUsed();
+			}
+		}
+		return total;
+	}
+
+	private static int[] parseThreads(String value) {
+		return Stream.of(value.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+
+	/**
+	 * @return 1, 2, 4 ... up to twice number of processors
+	 */
+	private static int[] defaultThreads() {
+		List<Integer> threads = new ArrayList<>();
+		for (int count = 1; count <= 2 * Runtime.getRuntime().availableProcessors(); count *= 2) {
+			threads.add(count);
+		}
+		return threads.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * delete tree one directory after another, paths of the whole tree are never held at once
+	 */
+	private static void delete(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+				if (e != null) {
+					throw e;
+				}
+				Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
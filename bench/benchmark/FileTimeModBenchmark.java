@@ -0,0 +1,261 @@
+package benchmark;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the per-file compute cost of {@code FileTimeMod}: input validation,
+ * each increase and decrease step, range check, the whole {@code modify()} chain
+ * and {@code TimeShift} which replaces it.
+ * <p>
+ * Classes of ftm are in the unnamed package, which can't be imported, and JMH doesn't accept benchmarks
+ * in the unnamed package, so they are called through method handles. The handles are static final,
+ * so JIT inlines them like direct calls.
+ * <p>
+ * Usage: {@code java -cp file_modify.jar:[bench-classes]:[jmh-classpath] benchmark.FileTimeModBenchmark},
+ * allocation rate is reported by the gc profiler beside throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileTimeModBenchmark {
+
+	private static final Class<?> FILE_TIME_MOD = load("FileTimeMod");
+	private static final Class<?> TIME_UNIT = load("FileTimeMod$TimeUnit");
+	private static final Class<?> OPERATION = load("FileTimeMod$OPERATION");
+	private static final Class<?> TIME_SHIFT = load("TimeShift");
+
+	private static final MethodHandle IS_VALID = find(FILE_TIME_MOD, "isValid", String.class, TIME_UNIT);
+	private static final MethodHandle CHECK_NUM_VALID = find(FILE_TIME_MOD, "checkNumValid", String.class);
+	private static final MethodHandle IN_RANGE = find(FILE_TIME_MOD, "inRange", FileTime.class);
+	private static final MethodHandle MODIFY = find(FILE_TIME_MOD, "modify",
+			OPERATION, CommandLine.class, FileTime.class);
+	private static final MethodHandle INCREASE_YEAR = find(FILE_TIME_MOD, "increaseYear", int.class, FileTime.class);
+	private static final MethodHandle INCREASE_MONTH = find(FILE_TIME_MOD, "increaseMonth", int.class, FileTime.class);
+	private static final MethodHandle INCREASE_DAY = find(FILE_TIME_MOD, "increaseDay", int.class, FileTime.class);
+	private static final MethodHandle INCREASE_HOUR = find(FILE_TIME_MOD, "increaseHour", int.class, FileTime.class);
+	private static final MethodHandle INCREASE_MINUTE = find(FILE_TIME_MOD, "increaseMinute",
+			int.class, FileTime.class);
+	private static final MethodHandle INCREASE_SECOND = find(FILE_TIME_MOD, "increaseSecond",
+			int.class, FileTime.class);
+	private static final MethodHandle DECREASE_YEAR = find(FILE_TIME_MOD, "decreaseYear", int.class, FileTime.class);
+	private static final MethodHandle DECREASE_MONTH = find(FILE_TIME_MOD, "decreaseMonth", int.class, FileTime.class);
+	private static final MethodHandle DECREASE_DAY = find(FILE_TIME_MOD, "decreaseDay", int.class, FileTime.class);
+	private static final MethodHandle DECREASE_HOUR = find(FILE_TIME_MOD, "decreaseHour", int.class, FileTime.class);
+	private static final MethodHandle DECREASE_MINUTE = find(FILE_TIME_MOD, "decreaseMinute",
+			int.class, FileTime.class);
+	private static final MethodHandle DECREASE_SECOND = find(FILE_TIME_MOD, "decreaseSecond",
+			int.class, FileTime.class);
+	private static final MethodHandle TIME_SHIFT_FROM = find(TIME_SHIFT, "from", OPERATION, CommandLine.class);
+	private static final MethodHandle TIME_SHIFT_APPLY = find(TIME_SHIFT, "apply", FileTime.class);
+
+	private Object fileTimeMod;
+	private Object yearUnit;
+	private Object increase;
+	private Object decrease;
+	private Object shift;
+	private CommandLine commandLine;
+	private FileTime fileTime;
+	private String value;
+
+	@Setup
+	public void setup() throws Throwable {
+		Constructor<?> constructor = FILE_TIME_MOD.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		fileTimeMod = constructor.newInstance();
+		yearUnit = TIME_UNIT.getEnumConstants()[0];
+		increase = OPERATION.getEnumConstants()[0];
+		decrease = OPERATION.getEnumConstants()[1];
+		commandLine = parse("-Il", "-y", "1", "-M", "2", "-d", "3", "-H", "4", "-m", "5", "-s", "6", "-f", "file");
+		shift = TIME_SHIFT_FROM.invokeExact(increase, commandLine);
+		fileTime = FileTime.from(Instant.parse("2020-03-31T11:00:08.123456789Z"));
+		value = "12";
+	}
+
+	@Benchmark
+	public boolean isValid() throws Throwable {
+		return (boolean) IS_VALID.invokeExact(fileTimeMod, value, yearUnit);
+	}
+
+	@Benchmark
+	public boolean checkNumValid() throws Throwable {
+		return (boolean) CHECK_NUM_VALID.invokeExact(fileTimeMod, value);
+	}
+
+	@Benchmark
+	public boolean inRange() throws Throwable {
+		return (boolean) IN_RANGE.invokeExact(fileTimeMod, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseYear() throws Throwable {
+		return (FileTime) INCREASE_YEAR.invokeExact(fileTimeMod, 1, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseMonth() throws Throwable {
+		return (FileTime) INCREASE_MONTH.invokeExact(fileTimeMod, 2, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseDay() throws Throwable {
+		return (FileTime) INCREASE_DAY.invokeExact(fileTimeMod, 3, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseHour() throws Throwable {
+		return (FileTime) INCREASE_HOUR.invokeExact(fileTimeMod, 4, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseMinute() throws Throwable {
+		return (FileTime) INCREASE_MINUTE.invokeExact(fileTimeMod, 5, fileTime);
+	}
+
+	@Benchmark
+	public FileTime increaseSecond() throws Throwable {
+		return (FileTime) INCREASE_SECOND.invokeExact(fileTimeMod, 6, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseYear() throws Throwable {
+		return (FileTime) DECREASE_YEAR.invokeExact(fileTimeMod, 1, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseMonth() throws Throwable {
+		return (FileTime) DECREASE_MONTH.invokeExact(fileTimeMod, 2, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseDay() throws Throwable {
+		return (FileTime) DECREASE_DAY.invokeExact(fileTimeMod, 3, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseHour() throws Throwable {
+		return (FileTime) DECREASE_HOUR.invokeExact(fileTimeMod, 4, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseMinute() throws Throwable {
+		return (FileTime) DECREASE_MINUTE.invokeExact(fileTimeMod, 5, fileTime);
+	}
+
+	@Benchmark
+	public FileTime decreaseSecond() throws Throwable {
+		return (FileTime) DECREASE_SECOND.invokeExact(fileTimeMod, 6, fileTime);
+	}
+
+	/**
+	 * whole chain of one file: option lookups, validation, parsing and six steps
+	 */
+	@Benchmark
+	public FileTime modifyIncrease() throws Throwable {
+		return (FileTime) MODIFY.invokeExact(fileTimeMod, increase, commandLine, fileTime);
+	}
+
+	@Benchmark
+	public FileTime modifyDecrease() throws Throwable {
+		return (FileTime) MODIFY.invokeExact(fileTimeMod, decrease, commandLine, fileTime);
+	}
+
+	/**
+	 * same change as {@link #modifyIncrease()}, with the shift precompiled once
+	 */
+	@Benchmark
+	public FileTime timeShiftApply() throws Throwable {
+		return (FileTime) TIME_SHIFT_APPLY.invokeExact(shift, fileTime);
+	}
+
+	/**
+	 * one-time cost of precompiling the shift
+	 */
+	@Benchmark
+	public Object timeShiftFrom() throws Throwable {
+		return (Object) TIME_SHIFT_FROM.invokeExact(increase, commandLine);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(FileTimeModBenchmark.class.getName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+	private static CommandLine parse(String... args) throws Throwable {
+		Method getOptions = load("OptionAnalysis").getDeclaredMethod("getOptions");
+		getOptions.setAccessible(true);
+		Constructor<?> constructor = load("OptionAnalysis").getDeclaredConstructor();
+		constructor.setAccessible(true);
+		Options options = (Options) getOptions.invoke(constructor.newInstance());
+		try {
+			return new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Class<?> load(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("ftm classes are not on class path", e);
+		}
+	}
+
+	/**
+	 * find a method and change its types of ftm to Object, so it can be called by invokeExact from this package
+	 */
+	private static MethodHandle find(Class<?> owner, String name, Class<?>... parameterTypes) {
+		try {
+			Method method = owner.getDeclaredMethod(name, parameterTypes);
+			method.setAccessible(true);
+			MethodHandle handle = MethodHandles.lookup().unreflect(method);
+			MethodType type = handle.type();
+			for (int i = 0; i < type.parameterCount(); i++) {
+				if (isUnnamed(type.parameterType(i))) {
+					type = type.changeParameterType(i, Object.class);
+				}
+			}
+			if (isUnnamed(type.returnType())) {
+				type = type.changeReturnType(Object.class);
+			}
+			return handle.asType(type);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static boolean isUnnamed(Class<?> type) {
+		return !type.isPrimitive() && type.getPackageName().isEmpty();
+	}
+}
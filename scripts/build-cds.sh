@@ -0,0 +1,26 @@
+#!/bin/sh
+# Build an AppCDS (class data sharing) archive for ftm, so classes are mapped
+# from the archive instead of being loaded and verified at every start.
+#
+# usage: scripts/build-cds.sh [path of file_modify.jar] [path of archive]
+#
+# then start ftm with:
+#   java -XX:SharedArchiveFile=ftm.jsa -Xshare:auto -cp file_modify.jar FastLauncher [arguments]
+set -e
+
+JAR=${1:-out/artifacts/file_modify_jar/file_modify.jar}
+ARCHIVE=${2:-ftm.jsa}
+
+if [ ! -f "$JAR" ]; then
+	echo "jar not found: $JAR, build artifact file_modify:jar first" >&2
+	exit 1
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+touch "$WORK/file"
+
+# run the common command once and dump every class it loaded, a zero shift keeps times of the file.
+# commands falling back to FileTimeMod still use JDK classes of the default archive
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$JAR" FastLauncher -Il -s 0 -f "$WORK/file" > /dev/null
+echo "archive written to $ARCHIVE"
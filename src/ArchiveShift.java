@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class shifts times of entries inside a ZIP or JAR archive in place.
+ * <p>
+ * Times are patched where they are stored, nothing is extracted or compressed again:
+ * <ul>
+ *     <li>DOS time and date of local header and central directory header, in local time zone</li>
+ *     <li>extended timestamp extra field 0x5455, seconds since 1970</li>
+ *     <li>NTFS extra field 0x000a, 100 nanoseconds since 1601</li>
+ * </ul>
+ * Archive is accessed through memory-mapped windows of a {@link FileChannel}, which slide along the
+ * archive, so archives larger than 2 GB and ZIP64 archives work. Central directory and local headers
+ * have a window each, both are read and written in order of the archive.
+ * <p>
+ * Last modified times of entries are always shifted, access and creation times in extra fields only if
+ * they are selected. Each time is checked on its own, a time out of range is kept as it is while other
+ * times of its entry are shifted, and a zero NTFS time, which means it isn't set, is kept too.
+ * Archive's own times are kept, or modified like a file if they are selected.
+ */
+class ArchiveShift {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final int EXTENDED_TIMESTAMP_EXTRA = 0x5455;
+	private static final int NTFS_EXTRA = 0x000a;
+	private static final int END_SIZE = 22;
+	private static final int MAX_COMMENT = 0xffff;
+	/**
+	 * 100 nanoseconds from 1601-01-01 to 1970-01-01
+	 */
+	private static final long NTFS_EPOCH_OFFSET = 116444736000000000L;
+	private static final int CENTRAL_WINDOW = 1 << 28;
+	private static final int LOCAL_WINDOW = 1 << 26;
+
+	/**
+	 * New value of a field of given width at a position of archive
+	 */
+	private record Patch(long position, int width, long value) {
+	}
+
+	private final FileTimeMod fileTimeMod;
+	private final PrintStream out;
+	private final ZoneId zone = ZoneId.systemDefault();
+	private long modifiedEntries;
+	private long outOfRangeTimes;
+
+	/**
+	 * @param fileTimeMod shift or target, and selected times of archive itself
+	 */
+	ArchiveShift(FileTimeMod fileTimeMod) {
+		this.fileTimeMod = fileTimeMod;
+		this.out = fileTimeMod.out;
+	}
+
+	/**
+	 * shift times of all entries of archive, then modify or restore times of archive itself
+	 *
+	 * @param archive ZIP or JAR file
+	 * @throws IOException if archive can't be read or written, or it isn't a ZIP file
+	 */
+	void run(Path archive) throws IOException {
+		BasicFileAttributes attributes = fileTimeMod.core.stat(archive);
+		try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			shiftEntries(channel);
+		}
+		// writing entries changed archive, its own times are restored first, then selected ones are modified
+		fileTimeMod.core.writeTimes(archive, attributes.lastModifiedTime(), attributes.lastAccessTime(), null);
+		if (fileTimeMod.core.modifyLastModified || fileTimeMod.core.modifyLastAccess || fileTimeMod.core.modifyCreation) {
+			fileTimeMod.modifyFile(archive, attributes, false);
+		}
+		out.println("modified " + modifiedEntries + " entries, " + outOfRangeTimes
+				+ " times out of range are not modified");
+	}
+
+	private void shiftEntries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		Window central = new Window(channel, CENTRAL_WINDOW);
+		Window local = new Window(channel, LOCAL_WINDOW);
+		long end = findEnd(central, size);
+		long entries = central.u16(end + 10);
+		long offset = central.u32(end + 16);
+		if (entries == 0xffff || offset == 0xffffffffL) {
+			long locator = end - 20;
+			if (locator < 0 || central.i32(locator) != ZIP64_LOCATOR) {
+				throw new IOException("invalid ZIP64 archive, locator is not found");
+			}
+			long zip64End = central.i64(locator + 8);
+			if (central.i32(zip64End) != ZIP64_END_OF_CENTRAL_DIRECTORY) {
+				throw new IOException("invalid ZIP64 archive, end of central directory is not found");
+			}
+			entries = central.i64(zip64End + 32);
+			offset = central.i64(zip64End + 48);
+		}
+		List<Patch> patches = new ArrayList<>();
+		long position = offset;
+		for (long i = 0; i < entries; i++) {
+			if (central.i32(position) != CENTRAL_HEADER) {
+				throw new IOException("invalid archive, central directory header is not found at " + position);
+			}
+			int nameLength = central.u16(position + 28);
+			int extraLength = central.u16(position + 30);
+			int commentLength = central.u16(position + 32);
+			long extra = position + 46 + nameLength;
+			long localHeader = central.u32(position + 42);
+			if (localHeader == 0xffffffffL) {
+				localHeader = zip64LocalHeader(central, position, extra, extraLength);
+			}
+			patches.clear();
+			planDosTime(central, position + 12, patches);
+			planExtra(central, extra, extraLength, patches);
+			int centralPatches = patches.size();
+			if (localHeader >= 0 && localHeader + 30 <= size && local.i32(localHeader) == LOCAL_HEADER) {
+				planDosTime(local, localHeader + 10, patches);
+				planExtra(local, localHeader + 30 + local.u16(localHeader + 26), local.u16(localHeader + 28), patches);
+			}
+			for (int p = 0; p < patches.size(); p++) {
+				(p < centralPatches ? central : local).put(patches.get(p));
+			}
+			if (!patches.isEmpty()) {
+				modifiedEntries++;
+			}
+			position = extra + extraLength + commentLength;
+		}
+		central.force();
+		local.force();
+	}
+
+	/**
+	 * find end of central directory record, it is followed by a comment of at most 65535 bytes
+	 */
+	private static long findEnd(Window window, long size) throws IOException {
+		long earliest = Math.max(0, size - END_SIZE - MAX_COMMENT);
+		if (size < END_SIZE) {
+			throw new IOException("not a ZIP archive, it is too small");
+		}
+		// map whole tail once, scanning backwards would map again at each position otherwise
+		window.index(earliest, (int) (size - earliest));
+		for (long position = size - END_SIZE; position >= earliest; position--) {
+			if (window.i32(position) == END_OF_CENTRAL_DIRECTORY) {
+				return position;
+			}
+		}
+		throw new IOException("not a ZIP archive, end of central directory is not found");
+	}
+
+	/**
+	 * get local header offset from ZIP64 extra field, sizes before it are only there if they are too large
+	 */
+	private static long zip64LocalHeader(Window window, long header, long extra, int extraLength) throws IOException {
+		long position = extra;
+		while (position + 4 <= extra + extraLength) {
+			int id = window.u16(position);
+			int size = window.u16(position + 2);
+			if (id == ZIP64_EXTRA) {
+				long field = position + 4;
+				if (window.u32(header + 24) == 0xffffffffL) {
+					field += 8;
+				}
+				if (window.u32(header + 20) == 0xffffffffL) {
+					field += 8;
+				}
+				return field + 8 <= position + 4 + size ? window.i64(field) : -1;
+			}
+			position += 4 + size;
+		}
+		return -1;
+	}
+
+	/**
+	 * plan new DOS time and date at position, invalid DOS time and time out of range are kept
+	 */
+	private void planDosTime(Window window, long position, List<Patch> patches) throws IOException {
+		int time = window.u16(position);
+		int date = window.u16(position + 2);
+		LocalDateTime current;
+		try {
+			current = LocalDateTime.of(1980 + (date >>> 9), (date >>> 5) & 0xf, date & 0x1f,
+					time >>> 11, (time >>> 5) & 0x3f, (time & 0x1f) * 2);
+		} catch (DateTimeException e) {
+			return;
+		}
+		FileTime modified = fileTimeMod.core.newTime(FileTime.from(current.atZone(zone).toInstant()));
+		LocalDateTime shifted = LocalDateTime.ofInstant(modified.toInstant(), zone);
+		if (!fileTimeMod.core.inRange(modified) || shifted.getYear() < 1980 || shifted.getYear() > 2107) {
+			outOfRangeTimes++;
+			return;
+		}
+		patches.add(new Patch(position, 2,
+				shifted.getHour() << 11 | shifted.getMinute() << 5 | shifted.getSecond() / 2));
+		patches.add(new Patch(position + 2, 2,
+				(shifted.getYear() - 1980) << 9 | shifted.getMonthValue() << 5 | shifted.getDayOfMonth()));
+	}
+
+	/**
+	 * plan new times of extended timestamp and NTFS extra fields, access and creation times only if selected
+	 */
+	private void planExtra(Window window, long extra, int extraLength, List<Patch> patches) throws IOException {
+		long position = extra;
+		long end = extra + extraLength;
+		while (position + 4 <= end) {
+			int id = window.u16(position);
+			int size = window.u16(position + 2);
+			long data = position + 4;
+			if (data + size > end) {
+				break;
+			}
+			if (id == EXTENDED_TIMESTAMP_EXTRA && size >= 1) {
+				int flags = window.u8(data);
+				long field = data + 1;
+				// modification, access and creation time, each only if its flag is set and it is stored
+				for (int bit = 0; bit < 3 && field + 4 <= data + size; bit++) {
+					if ((flags & 1 << bit) == 0) {
+						continue;
+					}
+					if (isSelected(bit)) {
+						FileTime modified = fileTimeMod.core.newTime(FileTime.from(window.i32(field), TimeUnit.SECONDS));
+						long seconds = modified.to(TimeUnit.SECONDS);
+						if (!fileTimeMod.core.inRange(modified) || seconds > Integer.MAX_VALUE) {
+							outOfRangeTimes++;
+						} else {
+							patches.add(new Patch(field, 4, seconds));
+						}
+					}
+					field += 4;
+				}
+			} else if (id == NTFS_EXTRA && size >= 4) {
+				long attribute = data + 4;
+				while (attribute + 4 <= data + size) {
+					int tag = window.u16(attribute);
+					int tagSize = window.u16(attribute + 2);
+					if (tag == 1 && tagSize >= 24 && attribute + 4 + 24 <= data + size) {
+						// modification, access and creation time, zero is a time which isn't set
+						for (int time = 0; time < 3; time++) {
+							long field = attribute + 4 + time * 8L;
+							long value = window.i64(field);
+							if (value == 0 || !isSelected(time)) {
+								continue;
+							}
+							long ticks = value - NTFS_EPOCH_OFFSET;
+							FileTime current = FileTime.from(Instant.ofEpochSecond(Math.floorDiv(ticks, 10_000_000),
+									Math.floorMod(ticks, 10_000_000) * 100));
+							FileTime modified = fileTimeMod.core.newTime(current);
+							if (!fileTimeMod.core.inRange(modified)) {
+								outOfRangeTimes++;
+								continue;
+							}
+							Instant instant = modified.toInstant();
+							patches.add(new Patch(field, 8, instant.getEpochSecond() * 10_000_000
+									+ instant.getNano() / 100 + NTFS_EPOCH_OFFSET));
+						}
+					}
+					attribute += 4 + tagSize;
+				}
+			}
+			position = data + size;
+		}
+	}
+
+	/**
+	 * @param time 0 for last modified, 1 for last access and 2 for creation time, order of extra fields
+	 * @return true if time of entries is shifted, last modified time always is
+	 */
+	private boolean isSelected(int time) {
+		return switch (time) {
+			case 1 -> fileTimeMod.core.modifyLastAccess;
+			case 2 -> fileTimeMod.core.modifyCreation;
+			default -> true;
+		};
+	}
+
+	/**
+	 * A memory-mapped part of archive, it is mapped again at position of an access outside of it
+	 */
+	private static final class Window {
+		private final FileChannel channel;
+		private final int capacity;
+		private MappedByteBuffer buffer;
+		private long start;
+
+		Window(FileChannel channel, int capacity) {
+			this.channel = channel;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * @return index of position in buffer, after mapping a window which contains length bytes from it
+		 */
+		private int index(long position, int length) throws IOException {
+			if (buffer == null || position < start || position + length > start + buffer.limit()) {
+				long size = channel.size();
+				if (position < 0 || position + length > size) {
+					throw new IOException("invalid archive, offset is out of file: " + position);
+				}
+				force();
+				start = position;
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(capacity, size - start));
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+			}
+			return (int) (position - start);
+		}
+
+		int u8(long position) throws IOException {
+			int index = index(position, 1);
+			return buffer.get(index) & 0xff;
+		}
+
+		int u16(long position) throws IOException {
+			int index = index(position, 2);
+			return buffer.getShort(index) & 0xffff;
+		}
+
+		int i32(long position) throws IOException {
+			int index = index(position, 4);
+			return buffer.getInt(index);
+		}
+
+		long u32(long position) throws IOException {
+			return i32(position) & 0xffffffffL;
+		}
+
+		long i64(long position) throws IOException {
+			int index = index(position, 8);
+			return buffer.getLong(index);
+		}
+
+		void put(Patch patch) throws IOException {
+			int index = index(patch.position(), patch.width());
+			switch (patch.width()) {
+				case 2 -> buffer.putShort(index, (short) patch.value());
+				case 4 -> buffer.putInt(index, (int) patch.value());
+				default -> buffer.putLong(index, patch.value());
+			}
+		}
+
+		void force() {
+			if (buffer != null) {
+				buffer.force();
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * This class decides which entries of a tree are modified.
+ * <p>
+ * Name patterns are compiled once and matched against the name of an entry, not the whole path.
+ * A pattern is a glob in default, {@code glob:} or {@code regex:} prefix selects syntax explicitly.
+ * <ul>
+ *     <li>exclude: entry is skipped before its attributes are read, an excluded directory isn't walked</li>
+ *     <li>include: only matching entries are modified, directories are still walked</li>
+ *     <li>older than and type: checked with attributes walker has read already</li>
+ * </ul>
+ */
+final class EntryFilter {
+
+	static final EntryFilter ALL = new EntryFilter(List.of(), List.of(), null, null);
+
+	enum Type {
+		FILE,
+		DIRECTORY
+	}
+
+	private final PathMatcher[] includes;
+	private final PathMatcher[] excludes;
+	private final FileTime olderThan;
+	private final Type type;
+
+	private EntryFilter(List<PathMatcher> includes, List<PathMatcher> excludes, FileTime olderThan, Type type) {
+		this.includes = includes.toArray(new PathMatcher[0]);
+		this.excludes = excludes.toArray(new PathMatcher[0]);
+		this.olderThan = olderThan;
+		this.type = type;
+	}
+
+	/**
+	 * create filter from include, exclude, older-than and type options
+	 *
+	 * @param commandLine command(s) from arguments
+	 * @param now         current time, older-than duration is counted back from it
+	 * @return filter of options, {@link #ALL} if none is given
+	 * @throws ParseException if any option value is invalid
+	 */
+	static EntryFilter from(CommandLine commandLine, Instant now) throws ParseException {
+		if (!commandLine.hasOption("include") && !commandLine.hasOption("exclude")
+				&& !commandLine.hasOption("older-than") && !commandLine.hasOption("type")) {
+			return ALL;
+		}
+		FileSystem fileSystem = FileSystems.getDefault();
+		List<PathMatcher> includes = compile(fileSystem, commandLine.getOptionValues("include"));
+		List<PathMatcher> excludes = compile(fileSystem, commandLine.getOptionValues("exclude"));
+		FileTime olderThan = null;
+		String value = commandLine.getOptionValue("older-than");
+		if (value != null) {
+			try {
+				olderThan = value.startsWith("P") || value.startsWith("p")
+						? FileTime.from(now.minus(Duration.parse(value)))
+						: FileTime.from(Instant.parse(value));
+			} catch (DateTimeParseException e) {
+				throw new ParseException("invalid value of older-than: " + value
+						+ ", it should be an ISO-8601 instant or duration");
+			}
+		}
+		Type type = null;
+		value = commandLine.getOptionValue("type");
+		if (value != null) {
+			type = switch (value) {
+				case "f", "file" -> Type.FILE;
+				case "d", "directory" -> Type.DIRECTORY;
+				default -> throw new ParseException("invalid value of type: " + value + ", it should be f or d");
+			};
+		}
+		return new EntryFilter(includes, excludes, olderThan, type);
+	}
+
+	private static List<PathMatcher> compile(FileSystem fileSystem, String[] patterns) throws ParseException {
+		List<PathMatcher> matchers = new ArrayList<>();
+		if (patterns == null) {
+			return matchers;
+		}
+		for (String pattern : patterns) {
+			String syntaxAndPattern = pattern.startsWith("glob:") || pattern.startsWith("regex:")
+					? pattern : "glob:" + pattern;
+			try {
+				matchers.add(fileSystem.getPathMatcher(syntaxAndPattern));
+			} catch (PatternSyntaxException e) {
+				throw new ParseException("invalid pattern: " + e.getMessage());
+			}
+		}
+		return matchers;
+	}
+
+	/**
+	 * check name of entry before its attributes are read
+	 *
+	 * @param name name of entry
+	 * @return false if entry is excluded, it isn't read, modified or walked
+	 */
+	boolean acceptName(Path name) {
+		for (PathMatcher exclude : excludes) {
+			if (exclude.matches(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * check entry which is not excluded with its attributes
+	 *
+	 * @param name       name of entry
+	 * @param attributes attributes read by walker
+	 * @return true if entry should be modified
+	 */
+	boolean accept(Path name, BasicFileAttributes attributes) {
+		if (type == Type.FILE && attributes.isDirectory() || type == Type.DIRECTORY && !attributes.isDirectory()) {
+			return false;
+		}
+		if (olderThan != null && attributes.lastModifiedTime().compareTo(olderThan) >= 0) {
+			return false;
+		}
+		if (includes.length == 0) {
+			return true;
+		}
+		for (PathMatcher include : includes) {
+			if (include.matches(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+/**
+ * This class is a startup-optimized entry of {@code ftm}.
+ * <p>
+ * Common commands like {@code ftm -Dld 1 -f file} or {@code ftm -I -l -c -H 2 -f file} are parsed here
+ * by hand, without building options of commons-cli, so fewer classes are loaded before the file is modified.
+ * Any other command, e.g. help, recursive or batch, and any command this class can't parse
+ * is passed to {@link FileTimeMod#main(String[])} unchanged, so results are always the same.
+ * <p>
+ * Together with a class data sharing archive, see {@code scripts/build-cds.sh}, it is the cheapest way
+ * to start {@code ftm} many times.
+ */
+public class FastLauncher {
+
+	/**
+	 * short names of time unit options, in order of {@code FileTimeMod.TimeUnit}
+	 */
+	private static final String UNIT_NAMES = "yMdHms";
+
+	public static void main(String[] args) {
+		String[] unitValues = new String[UNIT_NAMES.length()];
+		FileTimeMod fileTimeMod = new FileTimeMod();
+		FileTimeMod.OPERATION operation = null;
+		String filePath = null;
+		int i = 0;
+		while (i < args.length) {
+			String arg = args[i++];
+			if (arg.length() < 2 || arg.charAt(0) != '-' || arg.charAt(1) == '-') {
+				FileTimeMod.main(args);
+				return;
+			}
+			for (int j = 1; j < arg.length(); j++) {
+				char name = arg.charAt(j);
+				int unit = UNIT_NAMES.indexOf(name);
+				if (unit >= 0 || name == 'f') {
+					// rest of this argument or next argument is the value
+					String value;
+					if (j + 1 < arg.length()) {
+						value = arg.substring(j + 1);
+					} else if (i < args.length) {
+						value = args[i++];
+					} else {
+						FileTimeMod.main(args);
+						return;
+					}
+					if (unit >= 0 && unitValues[unit] != null) {
+						// repeated option, commons-cli decides which value counts
+						FileTimeMod.main(args);
+						return;
+					} else if (unit >= 0) {
+						unitValues[unit] = value;
+					} else if (filePath == null) {
+						filePath = value;
+					} else {
+						// more than one file path
+						FileTimeMod.main(args);
+						return;
+					}
+					break;
+				}
+				switch (name) {
+					case 'I', 'D' -> {
+						FileTimeMod.OPERATION given = name == 'I'
+								? FileTimeMod.OPERATION.INCREASE : FileTimeMod.OPERATION.DECREASE;
+						if (operation != null && operation != given) {
+							FileTimeMod.main(args);
+							return;
+						}
+						operation = given;
+					}
+					case 'l' -> fileTimeMod.core.modifyLastModified = true;
+					case 'c' -> fileTimeMod.core.modifyCreation = true;
+					case 'a' -> fileTimeMod.core.modifyLastAccess = true;
+					default -> {
+						FileTimeMod.main(args);
+						return;
+					}
+				}
+			}
+		}
+		if (operation == null || filePath == null || !(fileTimeMod.core.modifyLastModified
+				|| fileTimeMod.core.modifyCreation || fileTimeMod.core.modifyLastAccess)) {
+			FileTimeMod.main(args);
+			return;
+		}
+		try {
+			fileTimeMod.core.shift = TimeShift.parse(operation, unitValues);
+			Path path = Path.of(System.getProperty("user.dir")).resolve(filePath);
+			fileTimeMod.modifyFile(path, null, false);
+		} catch (IOException e) {
+			System.err.println("Get file time failed: " + e.getMessage());
+		} catch (InvalidPathException e) {
+			System.err.println("Get file failed, check file path : " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			// invalid time unit value
+			System.err.println("Parsing failed: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,45 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.file.Path;
+
+/**
+ * Flight recorder event of one read or write of file times.
+ * <p>
+ * Events are only created with {@code -Dftm.jfr=true}, see {@link FileTimeCore#RECORD_EVENTS},
+ * record them with e.g.
+ * {@code java -Dftm.jfr=true -XX:StartFlightRecording:filename=ftm.jfr -cp file_modify.jar FileTimeMod ...}
+ * and find slow paths or mounts with {@code jfr print --events ftm.FileOperation ftm.jfr}.
+ */
+@Name("ftm.FileOperation")
+@Label("File Operation")
+@Category("ftm")
+@Description("Read or write of file times")
+@StackTrace(false)
+class FileOperationEvent extends Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Path")
+	String path;
+
+	/**
+	 * end event and commit it if it is recorded, path is converted to string only then
+	 *
+	 * @param operation stat or write
+	 * @param path      path of file
+	 */
+	void finish(String operation, Path path) {
+		end();
+		if (shouldCommit()) {
+			this.operation = operation;
+			this.path = path.toString();
+			commit();
+		}
+	}
+}
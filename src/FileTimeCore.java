@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class modifies times of one file, the part shared by {@link FileTimeMod} and {@link FileTimeModifier}.
+ * <p>
+ * It computes new times from a shift or a target, skips times at new time within tolerance and times out of
+ * range, and reads and writes times through throttle, metrics and flight recorder. It prints nothing and
+ * doesn't use commons-cli, so {@link FileTimeModifier} works without commons-cli on class path.
+ */
+final class FileTimeCore {
+
+	/**
+	 * flight recorder events are only created with {@code -Dftm.jfr=true}, otherwise flight recorder
+	 * classes are never loaded, which would take longer than modifying a few files
+	 */
+	static final boolean RECORD_EVENTS = Boolean.getBoolean("ftm.jfr");
+
+	/**
+	 * Shift applied to each file and times it is applied to, set once before files are modified.
+	 * If target is given, times are set to target instead of being shifted.
+	 * Time which is at its new time within tolerance already is not written.
+	 */
+	TimeShift shift = TimeShift.ZERO;
+	FileTime target;
+	Duration tolerance = Duration.ZERO;
+	boolean modifyLastModified;
+	boolean modifyLastAccess;
+	boolean modifyCreation;
+
+	/**
+	 * Latency of reading, computing and writing times, nothing is recorded if metrics option isn't given
+	 */
+	Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Limit of rate and concurrency of reading and writing times, nothing is limited in default
+	 */
+	Throttle throttle = Throttle.NONE;
+
+	/**
+	 * Number of files written and times skipped because they are at new time already
+	 */
+	final LongAdder modifiedFiles = new LongAdder();
+	final LongAdder skippedTimes = new LongAdder();
+
+	/**
+	 * compute new times of file and write those which are changed, nothing is printed.
+	 * It is the part of modifying a file shared by command line and {@link FileTimeModifier}.
+	 *
+	 * @param path       path of file
+	 * @param attributes current attributes of file
+	 * @param view       view of file relative to an open directory, or null
+	 * @return change of each selected time, in order of last modified, last access and creation
+	 * @throws IOException if file time can't be written
+	 */
+	List<FileTimeModifier.Change> modifyTimes(Path path, BasicFileAttributes attributes, BasicFileAttributeView view)
+			throws IOException {
+		long start = System.nanoTime();
+		List<FileTimeModifier.Change> changes = new ArrayList<>(3);
+		FileTime lastModifiedTime = null;
+		FileTime lastAccessTime = null;
+		FileTime creationTime = null;
+		// a view of an open directory writes microseconds, new time is what is written
+		boolean micros = view != null;
+		if (modifyLastModified) {
+			lastModifiedTime = modifyTime(FileTimeModifier.Attribute.LAST_MODIFIED, attributes.lastModifiedTime(),
+					micros, changes);
+		}
+		if (modifyLastAccess) {
+			lastAccessTime = modifyTime(FileTimeModifier.Attribute.LAST_ACCESS, attributes.lastAccessTime(), micros,
+					changes);
+		}
+		if (modifyCreation) {
+			creationTime = modifyTime(FileTimeModifier.Attribute.CREATION, attributes.creationTime(), micros, changes);
+		}
+		metrics.record(Metrics.Phase.COMPUTE, start);
+		if (lastModifiedTime != null || lastAccessTime != null || creationTime != null) {
+			writeTimes(path, view, lastModifiedTime, lastAccessTime, creationTime);
+			modifiedFiles.increment();
+		}
+		return changes;
+	}
+
+	/**
+	 * @param currentTime current time of file
+	 * @return target time if it is given, otherwise current time shifted
+	 */
+	FileTime newTime(FileTime currentTime) {
+		return target != null ? target : shift.apply(currentTime);
+	}
+
+	/**
+	 * @param currentTime current time of file
+	 * @param newTime     time file will be set to
+	 * @return true if current time is new time within tolerance, so it needn't be written
+	 */
+	boolean isUnchanged(FileTime currentTime, FileTime newTime) {
+		return Duration.between(currentTime.toInstant(), newTime.toInstant()).abs().compareTo(tolerance) <= 0;
+	}
+
+	/**
+	 * compute new time and add its change
+	 *
+	 * @param attribute   which time of file
+	 * @param currentTime current time of file
+	 * @param micros      new time is truncated to microseconds, the precision it is written with
+	 * @param changes     changes of file
+	 * @return new time, or null if it is out of range or at new time already
+	 */
+	private FileTime modifyTime(FileTimeModifier.Attribute attribute, FileTime currentTime, boolean micros,
+								List<FileTimeModifier.Change> changes) {
+		FileTime modifiedTime = newTime(currentTime);
+		if (micros) {
+			// otherwise a time written without its nanoseconds is never at new time, and written by every run
+			modifiedTime = FileTime.from(modifiedTime.toInstant().truncatedTo(ChronoUnit.MICROS));
+		}
+		FileTimeModifier.Status status;
+		if (!inRange(modifiedTime)) {
+			status = FileTimeModifier.Status.OUT_OF_RANGE;
+		} else if (isUnchanged(currentTime, modifiedTime)) {
+			skippedTimes.increment();
+			status = FileTimeModifier.Status.UNCHANGED;
+		} else {
+			status = FileTimeModifier.Status.MODIFIED;
+		}
+		changes.add(new FileTimeModifier.Change(attribute, currentTime, modifiedTime, status));
+		return status == FileTimeModifier.Status.MODIFIED ? modifiedTime : null;
+	}
+
+	/**
+	 * read attributes of path after throttle allows, recorded to metrics and flight recorder
+	 *
+	 * @param path    path of file
+	 * @param options options of following links
+	 * @return basic attributes of file
+	 * @throws IOException if attributes can't be read
+	 */
+	BasicFileAttributes stat(Path path, LinkOption... options) throws IOException {
+		return stat(path, null, options);
+	}
+
+	/**
+	 * read attributes like {@link #stat(Path, LinkOption...)}, through view if it isn't null
+	 *
+	 * @param path    path of file, only printed if view is given
+	 * @param view    view relative to an open directory, or null
+	 * @param options options of following links if path is read
+	 * @return basic attributes of file
+	 * @throws IOException if attributes can't be read
+	 */
+	BasicFileAttributes stat(Path path, BasicFileAttributeView view, LinkOption... options) throws IOException {
+		FileOperationEvent event = RECORD_EVENTS ? new FileOperationEvent() : null;
+		long start = throttle.acquire();
+		if (event != null) {
+			event.begin();
+		}
+		try {
+			BasicFileAttributes attributes = view != null ? view.readAttributes()
+					: Files.readAttributes(path, BasicFileAttributes.class, options);
+			metrics.record(Metrics.Phase.STAT, start);
+			if (event != null) {
+				event.finish("stat", path);
+			}
+			return attributes;
+		} finally {
+			throttle.release(start);
+		}
+	}
+
+	/**
+	 * write times of path like {@link #setTimes(Path, FileTime, FileTime, FileTime)} after throttle allows,
+	 * recorded to metrics and flight recorder
+	 *
+	 * @throws IOException if attributes can't be written
+	 */
+	void writeTimes(Path path, FileTime lastModifiedTime, FileTime lastAccessTime, FileTime creationTime)
+			throws IOException {
+		writeTimes(path, null, lastModifiedTime, lastAccessTime, creationTime);
+	}
+
+	/**
+	 * write times like {@link #writeTimes(Path, FileTime, FileTime, FileTime)}, through view if it isn't null
+	 *
+	 * @throws IOException if attributes can't be written
+	 */
+	void writeTimes(Path path, BasicFileAttributeView view, FileTime lastModifiedTime, FileTime lastAccessTime,
+					FileTime creationTime) throws IOException {
+		FileOperationEvent event = RECORD_EVENTS ? new FileOperationEvent() : null;
+		long start = throttle.acquire();
+		if (event != null) {
+			event.begin();
+		}
+		try {
+			if (view != null) {
+				view.setTimes(lastModifiedTime, lastAccessTime, creationTime);
+			} else {
+				setTimes(path, lastModifiedTime, lastAccessTime, creationTime);
+			}
+			metrics.record(Metrics.Phase.WRITE, start);
+			if (event != null) {
+				event.finish("write", path);
+			}
+		} finally {
+			throttle.release(start);
+		}
+	}
+
+	static void setTimes(Path path, FileTime lastModifiedTime, FileTime lastAccessTime, FileTime creationTime)
+			throws IOException {
+		if (lastModifiedTime == null && lastAccessTime == null && creationTime == null) {
+			return;
+		}
+		Files.getFileAttributeView(path, BasicFileAttributeView.class)
+				.setTimes(lastModifiedTime, lastAccessTime, creationTime);
+	}
+
+	/**
+	 * check if the specified file time is in range
+	 *
+	 * @param fileTime file time which is checked whether in range from earliest to latest
+	 * @return true if is in range, otherwise, false
+	 */
+	boolean inRange(FileTime fileTime) {
+		return inRange(fileTime, Instant.now());
+	}
+
+	/**
+	 * check if the specified file time is in range, with latest time given by caller,
+	 * so many files can be checked against the same time.
+	 *
+	 * @param fileTime file time which is checked whether in range from earliest to latest
+	 * @param latest   latest time allowed, usually current time
+	 * @return true if is in range, otherwise, false
+	 */
+	static boolean inRange(FileTime fileTime, Instant latest) {
+		Instant earliest = Instant.ofEpochMilli(0L);
+		Instant fileInstant = fileTime.toInstant();
+		return fileInstant.isAfter(earliest) && fileInstant.isBefore(latest);
+	}
+}
@@ -2,13 +2,26 @@ import org.apache.commons.cli.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
 
 
@@ -17,7 +30,7 @@ import java.util.regex.Pattern;
  * <p>
  * This class is for modifying the time stamp of a file on Windows.
  * The time is based on original file time, It means time you can increase or decrease
- * is from creation time and last modified time, last modified time in default.
+ * is from creation time, last modified time and last access time.
  * <p>
  * The inner representation is Instant
  * <p>
@@ -37,19 +50,58 @@ import java.util.regex.Pattern;
  */
 public class FileTimeMod {
 
-	Path filePath;
+	/**
+	 * Shift or target, selected times, tolerance, metrics and throttle, files are read and written through it
+	 */
+	final FileTimeCore core = new FileTimeCore();
+
+	EntryFilter filter = EntryFilter.ALL;
+
+	/**
+	 * In recursive mode, read and write entries relative to open directories where it is supported
+	 */
+	boolean secure;
+
+	/**
+	 * Number of entries processed at the same time on a file store, instead of parallelism
+	 */
+	Map<FileStore, Integer> storeParallelism = Map.of();
+
+	/**
+	 * Index of files done by earlier runs, files unchanged since are skipped, null if it isn't used
+	 */
+	StateIndex state;
+
+	/**
+	 * What is printed for each file, output is added to sink if it isn't null, otherwise printed to out
+	 */
+	OutputSink.Mode outputMode = OutputSink.Mode.TEXT;
+	OutputSink sink;
+
+	/**
+	 * Streams output and errors are printed to, they are not System.out and System.err in server mode
+	 */
+	PrintStream out = System.out;
+	PrintStream err = System.err;
+
+	/**
+	 * Number of files skipped because they are unchanged since last run
+	 */
+	final LongAdder unchangedFiles = new LongAdder();
 
 	/**
 	 * Max values are allowed to input
 	 */
-	public final long MAX_YEAR = 30;
-	public final long MAX_MONTH = 360; // 30 * 12
-	public final long MAX_DAY = 10950; // 30 * 365
-	public final long MAX_HOUR = 262800; // 30 * 365 * 24
-	public final long MAX_MINUTE = 15768000; // 262800 * 60
-	public final long MAX_SECOND = 946080000; // 15768000 * 60
+	public static final long MAX_YEAR = 30;
+	public static final long MAX_MONTH = 360; // 30 * 12
+	public static final long MAX_DAY = 10950; // 30 * 365
+	public static final long MAX_HOUR = 262800; // 30 * 365 * 24
+	public static final long MAX_MINUTE = 15768000; // 262800 * 60
+	public static final long MAX_SECOND = 946080000; // 15768000 * 60
+
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+");
 
-	private enum TimeUnit {
+	enum TimeUnit {
 		YEAR,
 		MONTH,
 		DAY,
@@ -58,85 +110,542 @@ public class FileTimeMod {
 		SECOND
 	}
 
-	private enum OPERATION {
+	enum OPERATION {
 		INCREASE,
 		DECREASE
 	}
 
 	public static void main(String @NotNull [] args) {
+		int status = run(args, Path.of(System.getProperty("user.dir")), System.out, System.err);
+		if (status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * run one command, errors are printed instead of thrown
+	 *
+	 * @param args             arguments of command
+	 * @param workingDirectory directory relative paths are resolved against
+	 * @param out              stream output is printed to
+	 * @param err              stream errors are printed to
+	 * @return 0 if command succeeded, otherwise 1
+	 */
+	static int run(String[] args, Path workingDirectory, PrintStream out, PrintStream err) {
 		try {
-			process(args);
+			return process(args, workingDirectory, out, err);
 		} catch (ParseException e) {
-			System.err.println("Parsing failed: " + e.getMessage());
+			err.println("Parsing failed: " + e.getMessage());
 		} catch (IOException e) {
-			System.err.println("Get file time failed: " + e.getMessage());
+			err.println("Get file time failed: " + e.getMessage());
 		} catch (InvalidPathException e) {
-			System.err.println("Get file failed, check file path : " + e.getMessage());
+			err.println("Get file failed, check file path : " + e.getMessage());
 		}
+		return 1;
 	}
 
-	static void process(String[] args) throws ParseException, IOException {
+	static int process(String[] args) throws ParseException, IOException {
+		return process(args, Path.of(System.getProperty("user.dir")), System.out, System.err);
+	}
+
+	/**
+	 * @return 0 if all files are done, 1 if some lines of manifest failed
+	 */
+	static int process(String[] args, Path workingDirectory, PrintStream out, PrintStream err)
+			throws ParseException, IOException {
 		OptionAnalysis optionAnalysis = new OptionAnalysis();
 		Options options = optionAnalysis.getOptions();
 		CommandLineParser commandLineParser = new DefaultParser();
 		CommandLine commandLine = commandLineParser.parse(options, args);
 		FileTimeMod fileTimeMod = new FileTimeMod();
+		fileTimeMod.out = out;
+		fileTimeMod.err = err;
 		if (!fileTimeMod.checkArgNum(commandLine, optionAnalysis)) {
-			optionAnalysis.printHelp();
+			optionAnalysis.printHelp(out);
+			return 0;
+		}
+		if (commandLine.hasOption("batch") || commandLine.hasOption("rollback")) {
+			// journal is a manifest of original times
+			Path manifest = workingDirectory.resolve(commandLine.getOptionValue(
+					commandLine.hasOption("batch") ? "batch" : "rollback"));
+			fileTimeMod.core.metrics = getMetrics(commandLine);
+			fileTimeMod.core.throttle = getThrottle(commandLine);
+			fileTimeMod.outputMode = OutputSink.mode(commandLine);
+			long failed = new ManifestBatch(fileTimeMod, workingDirectory, getParallelism(commandLine)).run(manifest);
+			fileTimeMod.core.metrics.print(out);
+			return failed > 0 ? 1 : 0;
+		}
+		if (!commandLine.hasOption("file-path") || commandLine.hasOption("help")) {
+			optionAnalysis.printHelp(out);
+			return 0;
+		}
+		if (commandLine.hasOption("to")) {
+			fileTimeMod.core.target = parseInstant(commandLine, "to");
+		} else if (commandLine.hasOption("reference") || commandLine.hasOption("git")) {
+			if (commandLine.hasOption("journal") || commandLine.hasOption("archive") || commandLine.hasOption("scan")) {
+				throw new ParseException("reference and git can't be used with journal, archive or scan");
+			}
+		} else if (commandLine.hasOption("increase") || commandLine.hasOption("decrease")) {
+			OPERATION operation = commandLine.hasOption("increase") ? OPERATION.INCREASE : OPERATION.DECREASE;
+			fileTimeMod.core.shift = getShift(operation, commandLine);
+			if (commandLine.hasOption("base")) {
+				// shift of a fixed time is the same for every file
+				fileTimeMod.core.target = fileTimeMod.core.shift.apply(parseInstant(commandLine, "base"));
+			}
+		}
+		if (commandLine.hasOption("tolerance")) {
+			String value = commandLine.getOptionValue("tolerance");
+			if (!NUMBER_PATTERN.matcher(value).matches() || value.length() > 15) {
+				throw new ParseException("tolerance must be a number of milliseconds: " + value);
+			}
+			fileTimeMod.core.tolerance = Duration.ofMillis(Long.parseLong(value));
+		}
+		fileTimeMod.core.modifyLastModified = commandLine.hasOption("last-time");
+		fileTimeMod.core.modifyLastAccess = commandLine.hasOption("access-time");
+		fileTimeMod.core.modifyCreation = commandLine.hasOption("create-time");
+		fileTimeMod.filter = EntryFilter.from(commandLine, Instant.now());
+		fileTimeMod.core.metrics = getMetrics(commandLine);
+		fileTimeMod.core.throttle = getThrottle(commandLine);
+		fileTimeMod.secure = isSecureEngine(commandLine);
+		fileTimeMod.outputMode = OutputSink.mode(commandLine);
+		fileTimeMod.storeParallelism = getStoreParallelism(commandLine, workingDirectory);
+		List<Path> roots = new ArrayList<>();
+		for (String value : commandLine.getOptionValues("file-path")) {
+			roots.add(workingDirectory.resolve(value));
+		}
+		if (roots.size() > 1) {
+			roots = distinctRoots(roots);
+		}
+		boolean singleRoot = commandLine.hasOption("git") || commandLine.hasOption("reference")
+				|| commandLine.hasOption("archive") || commandLine.hasOption("watch")
+				|| commandLine.hasOption("journal");
+		if (singleRoot && roots.size() > 1) {
+			throw new ParseException("only one file path can be given with git, reference, archive, watch or journal");
+		}
+		Path root = roots.get(0);
+		if (commandLine.hasOption("git")) {
+			new GitHistory(fileTimeMod, getParallelism(commandLine)).run(root);
+		} else if (commandLine.hasOption("reference")) {
+			Path reference = workingDirectory.resolve(commandLine.getOptionValue("reference"));
+			new ReferenceCopy(fileTimeMod, getParallelism(commandLine))
+					.run(reference, root, commandLine.hasOption("recursive"));
+		} else if (commandLine.hasOption("scan")) {
+			boolean checkRange = commandLine.hasOption("to") || commandLine.hasOption("increase")
+					|| commandLine.hasOption("decrease");
+			new TimeScan(fileTimeMod, getParallelism(commandLine), checkRange).run(roots);
+		} else if (commandLine.hasOption("archive")) {
+			new ArchiveShift(fileTimeMod).run(root);
+		} else if (commandLine.hasOption("watch")) {
+			new WatchMode(fileTimeMod, getParallelism(commandLine), getWatchDelay(commandLine)).run(root);
+		} else if (commandLine.hasOption("journal")) {
+			Path journal = workingDirectory.resolve(commandLine.getOptionValue("journal"));
+			new JournaledRun(fileTimeMod, getParallelism(commandLine))
+					.run(root, commandLine.hasOption("recursive"), journal);
+		} else {
+			StateIndex state = commandLine.hasOption("state")
+					? StateIndex.open(workingDirectory.resolve(commandLine.getOptionValue("state")),
+					StateIndex.fingerprint(fileTimeMod.core.target, fileTimeMod.core.shift, fileTimeMod.core.modifyLastModified,
+							fileTimeMod.core.modifyLastAccess, fileTimeMod.core.modifyCreation)) : null;
+			try {
+				fileTimeMod.state = state;
+				fileTimeMod.modify(roots, commandLine.hasOption("recursive"), getParallelism(commandLine));
+			} finally {
+				fileTimeMod.state = null;
+				if (state != null) {
+					state.close();
+				}
+			}
+		}
+		fileTimeMod.core.metrics.print(out);
+		return 0;
+	}
+
+	/**
+	 * modify roots, or roots and all entries below them
+	 */
+	private void modify(List<Path> roots, boolean recursive, int parallelism) throws IOException {
+		if (!recursive) {
+			for (Path root : roots) {
+				long start = System.nanoTime();
+				modifyFile(root, null, roots.size() > 1);
+				core.metrics.record(Metrics.Phase.FILE, start);
+			}
+			if (outputMode == OutputSink.Mode.SUMMARY) {
+				printSummary();
+			}
 			return;
 		}
-		if (commandLine.hasOption("increase") && commandLine.hasOption("file-path")) {
-			fileTimeMod.filePath = Path.of(System.getProperty("user.dir"),
-					commandLine.getOptionValue("file-path"));
-			if (commandLine.hasOption("last-time")) {
-				FileTime currentTime = fileTimeMod.getLastModifiedTime();
-				System.out.println("current last modified: " + currentTime);
-				currentTime = fileTimeMod.modify(OPERATION.INCREASE, commandLine, currentTime);
-				if (!fileTimeMod.inRange(currentTime)) {
-					System.out.println("time after modified is out of range, can't modify");
+		try (OutputSink sink = new OutputSink(out)) {
+			this.sink = sink;
+			// walker reads and modifies an entry on same thread, one after the other, but it reads all roots
+			// before it modifies any, so time of a root is its own read and its modification
+			boolean timed = core.metrics.isEnabled();
+			ThreadLocal<long[]> fileStart = ThreadLocal.withInitial(() -> new long[1]);
+			Map<Path, Long> rootReads = new ConcurrentHashMap<>();
+			new TreeWalker(parallelism, err, filter, (path, view) -> {
+				if (!timed) {
+					return core.stat(path, view, LinkOption.NOFOLLOW_LINKS);
 				}
-				fileTimeMod.setLastModifiedTime(currentTime);
-				System.out.println("modified last modified: " + currentTime);
-			}
-			if (commandLine.hasOption("create-time")) {
-				FileTime currentTime = fileTimeMod.getLastModifiedTime();
-				System.out.println("current last modified: " + currentTime);
-				currentTime = fileTimeMod.modify(OPERATION.INCREASE, commandLine, currentTime);
-				if (!fileTimeMod.inRange(currentTime)) {
-					System.out.println("time after modified is out of range, can't modify");
+				long start = System.nanoTime();
+				BasicFileAttributes attributes = core.stat(path, view, LinkOption.NOFOLLOW_LINKS);
+				if (view == null && roots.contains(path)) {
+					rootReads.put(path, System.nanoTime() - start);
+				} else {
+					fileStart.get()[0] = start;
 				}
-				fileTimeMod.setCreationTime(currentTime);
-				System.out.println("modified last modified: " + currentTime);
-			}
-		} else if (commandLine.hasOption("decrease") && commandLine.hasOption("file-path")) {
-			fileTimeMod.filePath = Path.of(System.getProperty("user.dir"),
-					commandLine.getOptionValue("file-path"));
-			if (commandLine.hasOption("last-time")) {
-				FileTime currentTime = fileTimeMod.getLastModifiedTime();
-				System.out.println("current last modified: " + currentTime);
-				currentTime = fileTimeMod.modify(OPERATION.DECREASE, commandLine, currentTime);
-				if (!fileTimeMod.inRange(currentTime)) {
-					System.out.println("time after modified is out of range, can't modify");
+				return attributes;
+			}, secure, storeParallelism).walk(roots, (path, attributes, view) -> {
+				long start = System.nanoTime();
+				modifyFile(path, attributes, view, true);
+				if (timed) {
+					Long read = rootReads.remove(path);
+					core.metrics.record(Metrics.Phase.FILE, read != null ? start - read : fileStart.get()[0]);
+				}
+			});
+			printSummary();
+		} finally {
+			this.sink = null;
+		}
+	}
+
+	private static FileTime parseInstant(CommandLine commandLine, String option) throws ParseException {
+		String value = commandLine.getOptionValue(option);
+		try {
+			return FileTime.from(Instant.parse(value));
+		} catch (DateTimeParseException e) {
+			throw new ParseException("invalid value of " + option + ": " + value
+					+ ", it should be an ISO-8601 instant like 2020-03-31T11:00:08Z");
+		}
+	}
+
+	/**
+	 * @param commandLine command(s) from arguments
+	 * @return milliseconds without events after which watched files are modified, 500 in default
+	 * @throws ParseException if the value is not a number
+	 */
+	static long getWatchDelay(CommandLine commandLine) throws ParseException {
+		String value = commandLine.getOptionValue("watch-delay", "500");
+		if (!NUMBER_PATTERN.matcher(value).matches() || value.length() > 9) {
+			throw new ParseException("watch-delay must be a number of milliseconds: " + value);
+		}
+		return Long.parseLong(value);
+	}
+
+	/**
+	 * @param commandLine command(s) from arguments
+	 * @return true if secure engine is selected, path engine is default
+	 * @throws ParseException if engine is neither path nor secure
+	 */
+	static boolean isSecureEngine(CommandLine commandLine) throws ParseException {
+		String value = commandLine.getOptionValue("engine", "path");
+		return switch (value) {
+			case "path" -> false;
+			case "secure" -> true;
+			default -> throw new ParseException("invalid value of engine: " + value + ", it should be path or secure");
+		};
+	}
+
+	/**
+	 * get number of entries modified at the same time in recursive and batch mode,
+	 * number of available processors in default.
+	 *
+	 * @param commandLine command(s) from arguments
+	 * @return parallelism level
+	 * @throws ParseException if the value is not a positive number
+	 */
+	static int getParallelism(CommandLine commandLine) throws ParseException {
+		if (!commandLine.hasOption("parallelism")) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		String value = commandLine.getOptionValue("parallelism");
+		if (!NUMBER_PATTERN.matcher(value).matches() || value.length() > 9 || Integer.parseInt(value) == 0) {
+			throw new ParseException("parallelism must be a positive number: " + value);
+		}
+		return Integer.parseInt(value);
+	}
+
+	/**
+	 * create shift from time unit options of command line
+	 *
+	 * @param operation   increase or decrease
+	 * @param commandLine command(s) from arguments
+	 * @return shift of all time unit options
+	 * @throws ParseException if value of any time unit option is invalid
+	 */
+	static TimeShift getShift(OPERATION operation, CommandLine commandLine) throws ParseException {
+		String[] values = new String[TimeShift.UNIT_OPTIONS.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = commandLine.getOptionValue(TimeShift.UNIT_OPTIONS[i]);
+		}
+		try {
+			return TimeShift.parse(operation, values);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException(e.getMessage());
+		}
+	}
+
+	/**
+	 * create metrics from metrics option
+	 *
+	 * @param commandLine command(s) from arguments
+	 * @return metrics in format of option, {@link Metrics#DISABLED} if it isn't given
+	 * @throws ParseException if format is invalid
+	 */
+	static Metrics getMetrics(CommandLine commandLine) throws ParseException {
+		String value = commandLine.getOptionValue("metrics");
+		if (value == null) {
+			return Metrics.DISABLED;
+		}
+		return switch (value) {
+			case "summary" -> new Metrics(Metrics.Format.SUMMARY);
+			case "json" -> new Metrics(Metrics.Format.JSON);
+			default -> throw new ParseException("invalid value of metrics: " + value
+					+ ", it should be summary or json");
+		};
+	}
+
+	/**
+	 * create throttle from max-ops, max-concurrency and target-latency options
+	 *
+	 * @param commandLine command(s) from arguments
+	 * @return throttle of options, {@link Throttle#NONE} if none is given
+	 * @throws ParseException if any option value is not a positive number
+	 */
+	static Throttle getThrottle(CommandLine commandLine) throws ParseException {
+		if (!commandLine.hasOption("max-ops") && !commandLine.hasOption("max-concurrency")
+				&& !commandLine.hasOption("target-latency")) {
+			return Throttle.NONE;
+		}
+		return new Throttle(getPositive(commandLine, "max-ops", Long.MAX_VALUE),
+				(int) getPositive(commandLine, "max-concurrency", Integer.MAX_VALUE),
+				getPositive(commandLine, "target-latency", Long.MAX_VALUE / 1_000_000));
+	}
+
+	private static long getPositive(CommandLine commandLine, String option, long max) throws ParseException {
+		String value = commandLine.getOptionValue(option);
+		if (value == null) {
+			return 0;
+		}
+		try {
+			long number = Long.parseLong(value);
+			if (number > 0 && number <= max) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new ParseException(option + " must be a positive number: " + value);
+	}
+
+	/**
+	 * resolve roots to real paths and drop roots which are equal to or below another root,
+	 * so no entry is walked and modified twice
+	 *
+	 * @param roots roots given by file path options
+	 * @return real paths of roots which don't overlap, in given order
+	 * @throws IOException if any root doesn't exist or can't be resolved
+	 */
+	static List<Path> distinctRoots(List<Path> roots) throws IOException {
+		List<Path> realRoots = new ArrayList<>();
+		for (Path root : roots) {
+			realRoots.add(root.toRealPath());
+		}
+		List<Path> distinct = new ArrayList<>();
+		for (int i = 0; i < realRoots.size(); i++) {
+			Path root = realRoots.get(i);
+			boolean covered = false;
+			for (int j = 0; j < realRoots.size() && !covered; j++) {
+				Path other = realRoots.get(j);
+				// of equal roots the first one is kept
+				covered = i != j && root.startsWith(other) && (!root.equals(other) || j < i);
+			}
+			if (!covered) {
+				distinct.add(root);
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * get number of entries processed at the same time on each given file store,
+	 * other stores use parallelism
+	 *
+	 * @param commandLine      command(s) from arguments
+	 * @param workingDirectory directory relative paths are resolved against
+	 * @return parallelism of stores, empty if option isn't given
+	 * @throws ParseException if a value isn't path=number, or store of path can't be read
+	 */
+	static Map<FileStore, Integer> getStoreParallelism(CommandLine commandLine, Path workingDirectory)
+			throws ParseException {
+		String[] values = commandLine.getOptionValues("store-parallelism");
+		if (values == null) {
+			return Map.of();
+		}
+		Map<FileStore, Integer> storeParallelism = new HashMap<>();
+		for (String value : values) {
+			int separator = value.lastIndexOf('=');
+			String number = value.substring(separator + 1);
+			if (separator <= 0 || !NUMBER_PATTERN.matcher(number).matches() || number.length() > 9
+					|| Integer.parseInt(number) == 0) {
+				throw new ParseException("store-parallelism must be path=positive number: " + value);
+			}
+			Path path = workingDirectory.resolve(value.substring(0, separator));
+			try {
+				storeParallelism.put(Files.getFileStore(path), Integer.parseInt(number));
+			} catch (IOException e) {
+				throw new ParseException("file store of " + path + " can't be read: " + e.getMessage());
+			}
+		}
+		return storeParallelism;
+	}
+
+	/**
+	 * modify time stamp(s) of file by {@code shift}, only times selected by command line are modified.
+	 * All times are read at once and written back at once, output of one file
+	 * is printed at once, so it isn't mixed with other files.
+	 * It is safe to call from many threads at the same time.
+	 * Each phase is recorded to {@code metrics}, reads and writes are throttled by {@code throttle}.
+	 *
+	 * @param path       path of file
+	 * @param attributes current attributes of file, read from file if null
+	 * @param showPath   print path of file before its times, used when many files are modified
+	 * @throws IOException if file time can't be read or written
+	 */
+	void modifyFile(Path path, BasicFileAttributes attributes, boolean showPath) throws IOException {
+		modifyFile(path, attributes, null, showPath);
+	}
+
+	/**
+	 * modify time stamp(s) of file like {@link #modifyFile(Path, BasicFileAttributes, boolean)},
+	 * times are written through view if it isn't null
+	 *
+	 * @param view view of file relative to an open directory, or null
+	 * @throws IOException if file time can't be read or written
+	 */
+	void modifyFile(Path path, BasicFileAttributes attributes, BasicFileAttributeView view, boolean showPath)
+			throws IOException {
+		if (attributes == null) {
+			attributes = core.stat(path);
+		}
+		StateIndex state = this.state;
+		if (state != null && state.isUnchanged(path, attributes, core.tolerance.toNanos() / 1000)) {
+			unchangedFiles.increment();
+			return;
+		}
+		List<FileTimeModifier.Change> changes = core.modifyTimes(path, attributes, view);
+		if (state != null) {
+			// a file with a time out of range isn't done, it is tried again by next run
+			boolean done = true;
+			FileTime lastModifiedTime = attributes.lastModifiedTime();
+			for (FileTimeModifier.Change change : changes) {
+				done &= change.status() != FileTimeModifier.Status.OUT_OF_RANGE;
+				if (change.attribute() == FileTimeModifier.Attribute.LAST_MODIFIED
+						&& change.status() == FileTimeModifier.Status.MODIFIED) {
+					lastModifiedTime = change.target();
 				}
-				fileTimeMod.setLastModifiedTime(currentTime);
-				System.out.println("modified last modified: " + currentTime);
-			}
-			if (commandLine.hasOption("create-time")) {
-				FileTime currentTime = fileTimeMod.getLastModifiedTime();
-				System.out.println("current last modified: " + currentTime);
-				currentTime = fileTimeMod.modify(OPERATION.DECREASE, commandLine, currentTime);
-				if (!fileTimeMod.inRange(currentTime)) {
-					System.out.println("time after modified is out of range, can't modify");
+			}
+			if (done) {
+				state.put(path, attributes, lastModifiedTime);
+			}
+		}
+		printChanges(path, changes, showPath);
+	}
+
+	/**
+	 * print changes of a file in output mode, nothing is formatted if only summary or nothing is printed
+	 *
+	 * @param path     path of file
+	 * @param changes  change of each selected time
+	 * @param showPath print path of file before its times in text mode
+	 */
+	void printChanges(Path path, List<FileTimeModifier.Change> changes, boolean showPath) {
+		if (outputMode == OutputSink.Mode.TEXT) {
+			StringBuilder output = new StringBuilder();
+			if (showPath) {
+				output.append("file: ").append(path).append(System.lineSeparator());
+			}
+			for (FileTimeModifier.Change change : changes) {
+				String name = switch (change.attribute()) {
+					case LAST_MODIFIED -> "last modified";
+					case LAST_ACCESS -> "last access";
+					case CREATION -> "creation";
+				};
+				output.append("current ").append(name).append(": ").append(change.current())
+						.append(System.lineSeparator());
+				switch (change.status()) {
+					case OUT_OF_RANGE -> output.append("time after modified is out of range, can't modify: ")
+							.append(change.target());
+					case UNCHANGED -> output.append(name).append(" is at new time already, skipped");
+					case MODIFIED -> output.append("modified ").append(name).append(": ").append(change.target());
 				}
-				fileTimeMod.setCreationTime(currentTime);
-				System.out.println("modified last modified: " + currentTime);
+				output.append(System.lineSeparator());
+			}
+			print(output);
+		} else if (outputMode == OutputSink.Mode.NDJSON) {
+			StringBuilder output = new StringBuilder("{\"path\":");
+			OutputSink.appendJsonString(output, path.toString());
+			boolean written = false;
+			for (FileTimeModifier.Change change : changes) {
+				String key = switch (change.attribute()) {
+					case LAST_MODIFIED -> "lastModified";
+					case LAST_ACCESS -> "access";
+					case CREATION -> "creation";
+				};
+				String status = switch (change.status()) {
+					case OUT_OF_RANGE -> "out of range";
+					case UNCHANGED -> "skipped";
+					case MODIFIED -> "modified";
+				};
+				written |= change.status() == FileTimeModifier.Status.MODIFIED;
+				output.append(",\"").append(key).append("\":{\"current\":\"").append(change.current().toInstant())
+						.append("\",\"new\":\"").append(change.target().toInstant())
+						.append("\",\"status\":\"").append(status).append("\"}");
 			}
-		} else if (commandLine.hasOption("help")) {
-			optionAnalysis.printHelp();
+			output.append(",\"written\":").append(written).append('}').append('\n');
+			print(output);
 		}
 	}
 
-	private FileTime modify(OPERATION operation, CommandLine commandLine, FileTime fileTime) {
+	/**
+	 * print count of modified files and skipped times, in JSON if output mode is NDJSON
+	 */
+	void printSummary() {
+		if (outputMode == OutputSink.Mode.QUIET) {
+			return;
+		}
+		if (outputMode == OutputSink.Mode.NDJSON) {
+			print("{\"modified\":" + core.modifiedFiles.sum() + ",\"skipped\":" + core.skippedTimes.sum()
+					+ (state != null ? ",\"unchanged\":" + unchangedFiles.sum() : "") + "}\n");
+		} else {
+			print("modified " + core.modifiedFiles.sum() + " file(s), "
+					+ core.skippedTimes.sum() + " time(s) at new time already are skipped"
+					+ (state != null ? ", " + unchangedFiles.sum() + " file(s) unchanged since last run are skipped" : "")
+					+ System.lineSeparator());
+		}
+	}
+
+	/**
+	 * add output to sink if there is one, otherwise print it to out
+	 */
+	void print(CharSequence output) {
+		OutputSink sink = this.sink;
+		if (sink != null) {
+			sink.add(output.toString());
+		} else {
+			out.print(output);
+		}
+	}
+
+	/**
+	 * modify file time by time unit options one by one,
+	 * {@code TimeShift} does the same with one addition.
+	 *
+	 * @param operation   increase or decrease
+	 * @param commandLine command(s) from arguments
+	 * @param fileTime    file time needs to be modified
+	 * @return file time after modifying
+	 */
+	FileTime modify(OPERATION operation, CommandLine commandLine, FileTime fileTime) {
 		if (operation == OPERATION.INCREASE) {
 			// start to modify time
 			if (commandLine.hasOption("year")
@@ -225,9 +734,16 @@ public class FileTimeMod {
 				return false;
 			}
 		}
-		if (count == 0) {
+		// scan only reads, shift is optional
+		if (count == 0 && !commandLine.hasOption("scan")) {
 			return false;
 		}
+		// modes which carry their own times don't need must-have options
+		for (Option option : optionAnalysis.getIndependentOptions()) {
+			if (commandLine.hasOption(option)) {
+				return true;
+			}
+		}
 		checked = optionAnalysis.getMustHave();
 		for (Option option : checked) {
 			if (commandLine.hasOption(option)) {
@@ -241,26 +757,8 @@ public class FileTimeMod {
 		return FileTime.from(Instant.now());
 	}
 
-	FileTime getLastModifiedTime() throws IOException {
-		return Files.getLastModifiedTime(filePath);
-	}
-
-	FileTime getCreationTime() throws IOException {
-		return (FileTime) Files.getAttribute(filePath, "basic:creationTime");
-	}
-
-	void setLastModifiedTime(FileTime modifyTime) throws IOException {
-		FileTime currentTime = getLastModifiedTime();
-		Files.setAttribute(filePath, "basic:lastModifiedTime", modifyTime);
-	}
-
-	void setCreationTime(FileTime modifyTime) throws IOException {
-		FileTime currentTime = getCreationTime();
-		Files.setAttribute(filePath, "basic:creationTime", modifyTime);
-	}
-
 	boolean checkNumValid(String num) {
-		return Pattern.matches("[0-9]+", num);
+		return NUMBER_PATTERN.matcher(num).matches();
 	}
 
 	/**
@@ -313,19 +811,6 @@ public class FileTimeMod {
 		return true;
 	}
 
-	/**
-	 * check if the specified file time is in range
-	 *
-	 * @param fileTime file time which is checked whether in range from earliest to latest
-	 * @return true if is in range, otherwise, false
-	 */
-	boolean inRange(FileTime fileTime) {
-		Instant earliest = Instant.ofEpochMilli(0L);
-		Instant latest = Instant.now();
-		Instant fileInstant = fileTime.toInstant();
-		return fileInstant.isAfter(earliest) && fileInstant.isBefore(latest);
-	}
-
 	/**
 	 * @param second   second number needs to increase
 	 * @param fileTime file time needs to be increased
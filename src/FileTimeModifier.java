@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class modifies file times in process, without command line and without printing anything.
+ * <p>
+ * A modifier is built once with a shift or a target time, times to modify, tolerance and parallelism,
+ * then it can modify any number of files from many threads. Each file gets a {@link Result} with
+ * current and new value of each time, a file which can't be read or written gets its exception
+ * in the result instead of throwing it. Rules are the same as {@code ftm}: a new time must be
+ * after 1970-01-01 and before now, and a time at its new time within tolerance isn't written.
+ * <pre>{@code
+ * FileTimeModifier modifier = FileTimeModifier.builder()
+ *         .shift(Duration.ofDays(-1))
+ *         .attributes(FileTimeModifier.Attribute.LAST_MODIFIED)
+ *         .parallelism(8)
+ *         .build();
+ * List<FileTimeModifier.Result> results = modifier.modify(Files.list(directory));
+ * }</pre>
+ * Like all classes of {@code ftm} it is in the unnamed package.
+ */
+public final class FileTimeModifier {
+
+	/**
+	 * Time of a file
+	 */
+	public enum Attribute {
+		LAST_MODIFIED,
+		LAST_ACCESS,
+		CREATION
+	}
+
+	/**
+	 * What happened to a time of a file
+	 */
+	public enum Status {
+		/**
+		 * time is written
+		 */
+		MODIFIED,
+		/**
+		 * time is at its new time already within tolerance, it isn't written
+		 */
+		UNCHANGED,
+		/**
+		 * new time is out of range, it isn't written
+		 */
+		OUT_OF_RANGE
+	}
+
+	/**
+	 * Current and new value of one time of a file
+	 */
+	public record Change(Attribute attribute, FileTime current, FileTime target, Status status) {
+	}
+
+	/**
+	 * Result of one file, changes are empty if file failed before its times are read
+	 */
+	public record Result(Path path, List<Change> changes, IOException failure) {
+
+		public boolean failed() {
+			return failure != null;
+		}
+
+		/**
+		 * @return true if any time of file is written
+		 */
+		public boolean written() {
+			return failure == null && changes.stream().anyMatch(change -> change.status() == Status.MODIFIED);
+		}
+	}
+
+	private final FileTimeCore core;
+	private final int parallelism;
+
+	private FileTimeModifier(FileTimeCore core, int parallelism) {
+		this.core = core;
+		this.parallelism = parallelism;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * modify times of one file
+	 *
+	 * @param path path of file, links are followed
+	 * @return result of file
+	 */
+	public Result modify(Path path) {
+		try {
+			BasicFileAttributes attributes = core.stat(path);
+			return new Result(path, core.modifyTimes(path, attributes, null), null);
+		} catch (IOException e) {
+			return new Result(path, List.of(), e);
+		}
+	}
+
+	/**
+	 * modify times of all files, {@code parallelism} files at the same time
+	 *
+	 * @param paths paths of files
+	 * @return results in order of paths
+	 */
+	public List<Result> modify(Stream<Path> paths) {
+		if (parallelism == 1) {
+			return paths.sequential().map(this::modify).collect(Collectors.toList());
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.submit(() -> paths.parallel().map(this::modify).collect(Collectors.toList())).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * modify times of all files, {@code parallelism} files at the same time
+	 *
+	 * @param paths paths of files
+	 * @return results in order of paths
+	 */
+	public List<Result> modify(Iterable<Path> paths) {
+		return modify(StreamSupport.stream(paths.spliterator(), false));
+	}
+
+	/**
+	 * Builder of modifier, a shift or a target and at least one attribute must be given
+	 */
+	public static final class Builder {
+		private Duration shift;
+		private Instant target;
+		private Attribute[] attributes = new Attribute[0];
+		private Duration tolerance = Duration.ZERO;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param shift added to each time, negative to decrease
+		 */
+		public Builder shift(Duration shift) {
+			this.shift = Objects.requireNonNull(shift);
+			this.target = null;
+			return this;
+		}
+
+		/**
+		 * @param target each time is set to, instead of being shifted
+		 */
+		public Builder target(Instant target) {
+			this.target = Objects.requireNonNull(target);
+			this.shift = null;
+			return this;
+		}
+
+		public Builder attributes(Attribute... attributes) {
+			this.attributes = attributes.clone();
+			return this;
+		}
+
+		/**
+		 * @param tolerance time which differs from its new time not more than this isn't written
+		 */
+		public Builder tolerance(Duration tolerance) {
+			if (tolerance.isNegative()) {
+				throw new IllegalArgumentException("tolerance must not be negative: " + tolerance);
+			}
+			this.tolerance = tolerance;
+			return this;
+		}
+
+		/**
+		 * @param parallelism number of files modified at the same time, number of processors in default
+		 */
+		public Builder parallelism(int parallelism) {
+			if (parallelism < 1) {
+				throw new IllegalArgumentException("parallelism must be a positive number: " + parallelism);
+			}
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * @return modifier of given shift or target
+		 * @throws IllegalStateException if neither shift nor target, or no attribute is given
+		 */
+		public FileTimeModifier build() {
+			if (shift == null && target == null) {
+				throw new IllegalStateException("shift or target must be given");
+			}
+			if (attributes.length == 0) {
+				throw new IllegalStateException("at least one attribute must be given");
+			}
+			FileTimeCore core = new FileTimeCore();
+			if (target != null) {
+				core.target = FileTime.from(target);
+			} else {
+				core.shift = TimeShift.ofNanos(shift.toNanos());
+			}
+			core.tolerance = tolerance;
+			for (Attribute attribute : attributes) {
+				switch (attribute) {
+					case LAST_MODIFIED -> core.modifyLastModified = true;
+					case LAST_ACCESS -> core.modifyLastAccess = true;
+					case CREATION -> core.modifyCreation = true;
+				}
+			}
+			return new FileTimeModifier(core, parallelism);
+		}
+	}
+}
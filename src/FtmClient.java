@@ -0,0 +1,82 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * This class forwards arguments to {@link FtmServer} and prints its response,
+ * exit status of client is exit status of command.
+ * <p>
+ * Socket path is taken from {@code FTM_SOCKET} environment variable, ftm.sock in temporary directory in default.
+ * <p>
+ * Usage: {@code java -cp file_modify.jar FtmClient [ftm arguments]}
+ */
+public class FtmClient {
+
+	public static void main(String[] args) {
+		try {
+			System.exit(send(FtmServer.defaultSocketPath(), Path.of(System.getProperty("user.dir")), args,
+					System.out, System.err));
+		} catch (IOException e) {
+			System.err.println("Connect server failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * send one command to server and wait for its result
+	 *
+	 * @param socketPath       path of server socket
+	 * @param workingDirectory directory relative paths are resolved against by server
+	 * @param args             arguments of command
+	 * @param out              stream output of command is printed to
+	 * @param err              stream errors of command are printed to
+	 * @return exit status of command
+	 * @throws IOException if server can't be reached or closes connection early
+	 */
+	static int send(Path socketPath, Path workingDirectory, String[] args, PrintStream out, PrintStream err)
+			throws IOException {
+		try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			channel.connect(UnixDomainSocketAddress.of(socketPath));
+			StringBuilder request = new StringBuilder();
+			request.append(workingDirectory.toAbsolutePath()).append('\0');
+			for (String arg : args) {
+				request.append(arg).append('\0');
+			}
+			FtmServer.writeFully(channel, ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.UTF_8)));
+			channel.shutdownOutput();
+			ByteBuffer header = ByteBuffer.allocate(5);
+			while (true) {
+				header.clear();
+				readFully(channel, header);
+				byte type = header.get();
+				ByteBuffer payload = ByteBuffer.allocate(header.getInt());
+				readFully(channel, payload);
+				switch (type) {
+					case FtmServer.STDOUT -> out.write(payload.array(), 0, payload.limit());
+					case FtmServer.STDERR -> err.write(payload.array(), 0, payload.limit());
+					case FtmServer.EXIT -> {
+						out.flush();
+						err.flush();
+						return payload.getInt();
+					}
+					default -> throw new IOException("unknown frame type " + type);
+				}
+			}
+		}
+	}
+
+	private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("server closed connection");
+			}
+		}
+		buffer.flip();
+	}
+}
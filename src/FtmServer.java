@@ -0,0 +1,207 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class keeps a warmed JVM running and executes {@code ftm} commands sent over a Unix domain socket,
+ * so a command doesn't pay for JVM startup and class loading.
+ * <p>
+ * Protocol of one connection:
+ * <ul>
+ *     <li>client sends working directory and each argument as UTF-8 strings terminated by {@code \0},
+ *     then shuts down its output</li>
+ *     <li>server sends frames of one type byte, a 4 bytes big-endian length and payload,
+ *     type {@link #STDOUT} and {@link #STDERR} carry output, type {@link #EXIT} carries
+ *     exit status as a 4 bytes int and ends the response</li>
+ * </ul>
+ * Commands from different connections run at the same time.
+ * <p>
+ * Usage: {@code java -cp file_modify.jar FtmServer [socket path]}
+ */
+public class FtmServer {
+
+	static final byte STDOUT = 1;
+	static final byte STDERR = 2;
+	static final byte EXIT = 3;
+
+	/**
+	 * @return socket path from {@code FTM_SOCKET} environment variable, or ftm.sock in temporary directory
+	 */
+	static Path defaultSocketPath() {
+		String path = System.getenv("FTM_SOCKET");
+		if (path != null && !path.isEmpty()) {
+			return Path.of(path);
+		}
+		return Path.of(System.getProperty("java.io.tmpdir"), "ftm.sock");
+	}
+
+	public static void main(String[] args) {
+		Path socketPath = args.length > 0 ? Path.of(args[0]) : defaultSocketPath();
+		try {
+			serve(socketPath);
+		} catch (IOException e) {
+			System.err.println("Server failed: " + e.getMessage());
+		}
+	}
+
+	static void serve(Path socketPath) throws IOException {
+		warmUp();
+		Files.deleteIfExists(socketPath);
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "ftm-request");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			server.bind(UnixDomainSocketAddress.of(socketPath));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					Files.deleteIfExists(socketPath);
+				} catch (IOException ignored) {
+					// socket file is left, it is deleted at next start
+				}
+			}));
+			System.out.println("listening on " + socketPath);
+			while (true) {
+				SocketChannel client = server.accept();
+				executor.execute(() -> handle(client));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * run a command on a temporary file once, so classes are loaded before first request
+	 */
+	private static void warmUp() throws IOException {
+		Path file = Files.createTempFile("ftm", ".warmup");
+		try {
+			PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+			FileTimeMod.run(new String[]{"-Dl", "-d", "1", "-f", file.getFileName().toString()},
+					file.getParent(), discard, discard);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static void handle(SocketChannel client) {
+		try (client) {
+			List<String> request = readRequest(client);
+			Object lock = new Object();
+			PrintStream out = new PrintStream(new FrameOutputStream(client, STDOUT, lock), false,
+					StandardCharsets.UTF_8);
+			PrintStream err = new PrintStream(new FrameOutputStream(client, STDERR, lock), false,
+					StandardCharsets.UTF_8);
+			int status;
+			if (request.isEmpty()) {
+				err.println("Request failed: working directory is missing");
+				status = 1;
+			} else {
+				try {
+					Path workingDirectory = Path.of(request.get(0));
+					String[] args = request.subList(1, request.size()).toArray(new String[0]);
+					status = FileTimeMod.run(args, workingDirectory, out, err);
+				} catch (InvalidPathException e) {
+					err.println("Request failed, check working directory: " + e.getMessage());
+					status = 1;
+				} catch (RuntimeException e) {
+					// a bug of one command must not leave client waiting for exit status
+					err.println("Request failed: " + e);
+					status = 1;
+				}
+			}
+			out.flush();
+			err.flush();
+			synchronized (lock) {
+				ByteBuffer frame = ByteBuffer.allocate(9);
+				frame.put(EXIT).putInt(4).putInt(status).flip();
+				writeFully(client, frame);
+			}
+		} catch (IOException e) {
+			System.err.println("Request failed: " + e.getMessage());
+		}
+	}
+
+	private static List<String> readRequest(SocketChannel client) throws IOException {
+		byte[] bytes = Channels.newInputStream(client).readAllBytes();
+		List<String> request = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == 0) {
+				request.add(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+				start = i + 1;
+			}
+		}
+		return request;
+	}
+
+	static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Output stream buffers bytes and sends them as frames of one type.
+	 * Frames of stdout and stderr share one lock, so they don't mix on the channel.
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private static final int BUFFER_SIZE = 8192;
+
+		private final SocketChannel channel;
+		private final byte type;
+		private final Object lock;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+
+		FrameOutputStream(SocketChannel channel, byte type, Object lock) {
+			this.channel = channel;
+			this.type = type;
+			this.lock = lock;
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			buffer.write(b);
+			if (buffer.size() >= BUFFER_SIZE) {
+				flush();
+			}
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			buffer.write(b, off, len);
+			if (buffer.size() >= BUFFER_SIZE) {
+				flush();
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			if (buffer.size() == 0) {
+				return;
+			}
+			ByteBuffer frame = ByteBuffer.allocate(5 + buffer.size());
+			frame.put(type).putInt(buffer.size()).put(buffer.toByteArray()).flip();
+			buffer.reset();
+			synchronized (lock) {
+				writeFully(channel, frame);
+			}
+		}
+	}
+}
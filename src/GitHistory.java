@@ -0,0 +1,204 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class sets last modified time of each tracked file of a git work tree
+ * to the time of the last commit which changed it.
+ * <p>
+ * Tracked files are listed once by {@code git ls-files}, then history is read newest first in one
+ * streaming pass of {@code git log --name-only}, the first commit a file is seen in is its last change.
+ * Reading stops as soon as every tracked file has a time, so old history is usually not read at all.
+ * Only the local repository is read, commits are not fetched.
+ */
+class GitHistory {
+
+	/**
+	 * Marker before commit time in log output, file names don't start with it
+	 */
+	private static final byte COMMIT_MARKER = 1;
+	private static final long NOT_FOUND = Long.MIN_VALUE;
+
+	private final FileTimeMod fileTimeMod;
+	private final int parallelism;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * @param fileTimeMod filter, tolerance and output mode to apply
+	 * @param parallelism number of files modified at the same time
+	 */
+	GitHistory(FileTimeMod fileTimeMod, int parallelism) {
+		this.fileTimeMod = fileTimeMod;
+		this.parallelism = parallelism;
+		this.out = fileTimeMod.out;
+		this.err = fileTimeMod.err;
+	}
+
+	/**
+	 * set last modified time of tracked files under root, or of root if it is a file
+	 *
+	 * @param root directory in a git work tree, or a tracked file
+	 * @return number of files failed, printed to error stream already
+	 * @throws IOException if git can't be run or fails
+	 */
+	long run(Path root) throws IOException {
+		Path directory = Files.isDirectory(root) ? root : root.toAbsolutePath().getParent();
+		String pathSpec = Files.isDirectory(root) ? "." : root.getFileName().toString();
+		Map<String, Long> times = new HashMap<>();
+		for (String path : split(git(directory, "ls-files", "-z", "--", pathSpec))) {
+			times.put(path, NOT_FOUND);
+		}
+		long missing = index(directory, pathSpec, times);
+		List<Map.Entry<String, Long>> entries = new ArrayList<>(times.entrySet());
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(() -> entries.parallelStream()
+					.filter(entry -> entry.getValue() != NOT_FOUND)
+					.forEach(entry -> apply(directory.resolve(entry.getKey()), entry.getValue()))).join();
+		} finally {
+			pool.shutdown();
+		}
+		fileTimeMod.printSummary();
+		if (missing > 0 && (fileTimeMod.outputMode == OutputSink.Mode.TEXT
+				|| fileTimeMod.outputMode == OutputSink.Mode.SUMMARY)) {
+			out.println(missing + " tracked file(s) are not committed yet, not modified");
+		}
+		return failed.sum();
+	}
+
+	/**
+	 * read history newest first and put time of the first commit each tracked file is seen in
+	 *
+	 * @return number of tracked files not found in history
+	 */
+	private long index(Path directory, String pathSpec, Map<String, Long> times) throws IOException {
+		long pending = times.size();
+		if (pending == 0) {
+			return 0;
+		}
+		Process process = start(directory, "log", "--format=%x01%ct", "--name-only", "-z", "--no-renames",
+				"--relative", "--", pathSpec);
+		boolean complete = false;
+		try (InputStream input = new BufferedInputStream(process.getInputStream(), 1 << 16)) {
+			ByteArrayOutputStream token = new ByteArrayOutputStream();
+			long commitTime = NOT_FOUND;
+			int b;
+			while (pending > 0 && (b = input.read()) >= 0) {
+				if (b != 0) {
+					token.write(b);
+					continue;
+				}
+				byte[] bytes = token.toByteArray();
+				token.reset();
+				if (bytes.length > 0 && bytes[0] == COMMIT_MARKER) {
+					commitTime = Long.parseLong(new String(bytes, 1, bytes.length - 1, StandardCharsets.US_ASCII));
+					continue;
+				}
+				// first file of a commit follows a line break
+				int start = bytes.length > 0 && bytes[0] == '\n' ? 1 : 0;
+				String path = new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8);
+				Long time = times.get(path);
+				if (time != null && time == NOT_FOUND) {
+					times.put(path, commitTime);
+					pending--;
+				}
+			}
+			complete = pending > 0;
+		} catch (NumberFormatException e) {
+			throw new IOException("unexpected output of git log", e);
+		} finally {
+			process.destroy();
+		}
+		// git is stopped early when every file is found, its status only matters if all output was read
+		if (complete) {
+			waitFor(process, "log");
+		}
+		return pending;
+	}
+
+	private void apply(Path path, long commitSeconds) {
+		try {
+			Path name = path.getFileName();
+			if (!fileTimeMod.filter.acceptName(name)) {
+				return;
+			}
+			BasicFileAttributes attributes = fileTimeMod.core.stat(path, LinkOption.NOFOLLOW_LINKS);
+			if (attributes.isSymbolicLink() || !fileTimeMod.filter.accept(name, attributes)) {
+				return;
+			}
+			FileTime time = FileTime.from(commitSeconds, TimeUnit.SECONDS);
+			if (fileTimeMod.core.isUnchanged(attributes.lastModifiedTime(), time)) {
+				fileTimeMod.core.skippedTimes.increment();
+				return;
+			}
+			fileTimeMod.core.writeTimes(path, time, null, null);
+			fileTimeMod.core.modifiedFiles.increment();
+		} catch (IOException e) {
+			err.println("Modify file time failed: " + path + " " + e.getMessage());
+			failed.increment();
+		}
+	}
+
+	private static Process start(Path directory, String... args) throws IOException {
+		List<String> command = new ArrayList<>(List.of("git", "-C", directory.toString()));
+		command.addAll(List.of(args));
+		return new ProcessBuilder(command)
+				.redirectError(ProcessBuilder.Redirect.DISCARD)
+				.start();
+	}
+
+	private static byte[] git(Path directory, String... args) throws IOException {
+		Process process = start(directory, args);
+		byte[] output;
+		try (InputStream input = process.getInputStream()) {
+			output = input.readAllBytes();
+		}
+		waitFor(process, args[0]);
+		return output;
+	}
+
+	private static void waitFor(Process process, String command) throws IOException {
+		try {
+			int status = process.waitFor();
+			if (status != 0) {
+				throw new IOException("git " + command + " failed with status " + status
+						+ ", check that file path is in a git work tree");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for git " + command, e);
+		}
+	}
+
+	/**
+	 * split NUL terminated paths
+	 */
+	private static List<String> split(byte[] output) {
+		List<String> paths = new ArrayList<>();
+		int start = 0;
+		for (int i = 0; i < output.length; i++) {
+			if (output[i] == 0) {
+				paths.add(new String(output, start, i - start, StandardCharsets.UTF_8));
+				start = i + 1;
+			}
+		}
+		return paths;
+	}
+}
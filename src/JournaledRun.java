@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class modifies files in two steps, so a run is either done completely or can be rolled back.
+ * <p>
+ * First, new times of all files are computed and checked against range in memory, current time is taken
+ * once for all files. If any time is out of range or any file can't be read, nothing is modified.
+ * <p>
+ * Then files are modified in groups. Original times of a group are appended to journal and forced to disk
+ * once before the group is modified, so the journal always covers every modified file without syncing
+ * after each file. Journal is a manifest of {@link ManifestBatch}, so rollback is a batch run of it,
+ * it's safe to roll back a run which was interrupted.
+ */
+class JournaledRun {
+
+	private static final int GROUP_SIZE = 4096;
+
+	/**
+	 * New and original times of one file, time not changed is null
+	 */
+	record Change(Path path, FileTime lastModified, FileTime lastAccess, FileTime creation,
+				  FileTime originalLastModified, FileTime originalLastAccess, FileTime originalCreation) {
+
+		boolean isEmpty() {
+			return lastModified == null && lastAccess == null && creation == null;
+		}
+	}
+
+	private final FileTimeMod fileTimeMod;
+	private final int parallelism;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final LongAdder modified = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder unchanged = new LongAdder();
+
+	/**
+	 * @param fileTimeMod shift and selected times to apply
+	 * @param parallelism number of files read and modified at the same time
+	 */
+	JournaledRun(FileTimeMod fileTimeMod, int parallelism) {
+		this.fileTimeMod = fileTimeMod;
+		this.parallelism = parallelism;
+		this.out = fileTimeMod.out;
+		this.err = fileTimeMod.err;
+	}
+
+	/**
+	 * plan changes of root, or of root and all entries below it, then apply them with journal
+	 *
+	 * @param root      file or root of tree
+	 * @param recursive modify all entries below root
+	 * @param journal   journal file, it must not exist
+	 * @throws IOException if journal can't be created or written
+	 */
+	void run(Path root, boolean recursive, Path journal) throws IOException {
+		// create journal first, so a run which can't be rolled back doesn't start
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(journal, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException("journal already exists, roll it back or remove it first: " + journal, e);
+		}
+		List<Change> plan;
+		try {
+			plan = plan(root, recursive);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			Files.delete(journal);
+			throw e;
+		}
+		if (plan == null) {
+			channel.close();
+			Files.delete(journal);
+			out.println("nothing is modified");
+			return;
+		}
+		try (channel) {
+			apply(plan, root, channel);
+		}
+		out.println("modified " + modified.sum() + " file(s), failed " + failed.sum() + ", "
+				+ unchanged.sum() + " file(s) at new time already are skipped, roll back with: ftm -R " + journal);
+	}
+
+	/**
+	 * @return changes of all files which are not at new time already,
+	 * or null if any file can't be read or its time would be out of range
+	 */
+	private List<Change> plan(Path root, boolean recursive) throws IOException {
+		Instant latest = Instant.now();
+		ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+		LongAdder outOfRange = new LongAdder();
+		TreeWalker.EntryAction planner = (path, attributes, view) -> {
+			long start = System.nanoTime();
+			Change change = plan(path, attributes, latest);
+			fileTimeMod.core.metrics.record(Metrics.Phase.COMPUTE, start);
+			if (change == null) {
+				outOfRange.increment();
+			} else if (change.isEmpty()) {
+				unchanged.increment();
+			} else {
+				changes.add(change);
+			}
+		};
+		long unreadable;
+		if (recursive) {
+			unreadable = new TreeWalker(parallelism, err, fileTimeMod.filter,
+					(path, view) -> fileTimeMod.core.stat(path, view, LinkOption.NOFOLLOW_LINKS), fileTimeMod.secure,
+						fileTimeMod.storeParallelism)
+					.walk(root, planner);
+		} else {
+			BasicFileAttributes attributes = fileTimeMod.core.stat(root);
+			// writing times of a FIFO, socket or device opens it, which may block forever
+			if (!attributes.isOther()) {
+				planner.apply(root, attributes, null);
+			}
+			unreadable = 0;
+		}
+		if (unreadable > 0 || outOfRange.sum() > 0) {
+			err.println(outOfRange.sum() + " file(s) would be out of range, " + unreadable + " file(s) can't be read");
+			return null;
+		}
+		return new ArrayList<>(changes);
+	}
+
+	private Change plan(Path path, BasicFileAttributes attributes, Instant latest) {
+		FileTime lastModified = null;
+		FileTime lastAccess = null;
+		FileTime creation = null;
+		if (fileTimeMod.core.modifyLastModified) {
+			lastModified = fileTimeMod.core.newTime(attributes.lastModifiedTime());
+			if (!FileTimeCore.inRange(lastModified, latest)) {
+				err.println("last modified time after modified is out of range: " + path + " " + lastModified);
+				return null;
+			}
+			if (fileTimeMod.core.isUnchanged(attributes.lastModifiedTime(), lastModified)) {
+				lastModified = null;
+			}
+		}
+		if (fileTimeMod.core.modifyLastAccess) {
+			lastAccess = fileTimeMod.core.newTime(attributes.lastAccessTime());
+			if (!FileTimeCore.inRange(lastAccess, latest)) {
+				err.println("last access time after modified is out of range: " + path + " " + lastAccess);
+				return null;
+			}
+			if (fileTimeMod.core.isUnchanged(attributes.lastAccessTime(), lastAccess)) {
+				lastAccess = null;
+			}
+		}
+		if (fileTimeMod.core.modifyCreation) {
+			creation = fileTimeMod.core.newTime(attributes.creationTime());
+			if (!FileTimeCore.inRange(creation, latest)) {
+				err.println("creation time after modified is out of range: " + path + " " + creation);
+				return null;
+			}
+			if (fileTimeMod.core.isUnchanged(attributes.creationTime(), creation)) {
+				creation = null;
+			}
+		}
+		return new Change(path, lastModified, lastAccess, creation,
+				lastModified == null ? null : attributes.lastModifiedTime(),
+				lastAccess == null ? null : attributes.lastAccessTime(),
+				creation == null ? null : attributes.creationTime());
+	}
+
+	private void apply(List<Change> plan, Path root, FileChannel channel) throws IOException {
+		write(channel, "# ftm journal of " + root + ", original times of path,lastModified,creation,access\n");
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (int start = 0; start < plan.size(); start += GROUP_SIZE) {
+				List<Change> group = plan.subList(start, Math.min(start + GROUP_SIZE, plan.size()));
+				StringBuilder records = new StringBuilder();
+				for (Change change : group) {
+					appendRecord(records, change);
+				}
+				write(channel, records.toString());
+				channel.force(false);
+				pool.submit(() -> group.parallelStream().forEach(this::apply)).join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void apply(Change change) {
+		try {
+			fileTimeMod.core.writeTimes(change.path(), change.lastModified(), change.lastAccess(), change.creation());
+			modified.increment();
+		} catch (IOException e) {
+			err.println("Modify file time failed: " + change.path() + " " + e.getMessage());
+			failed.increment();
+		}
+	}
+
+	/**
+	 * append original times of change as one CSV line of manifest, path is always quoted
+	 */
+	private static void appendRecord(StringBuilder records, Change change) {
+		records.append('"').append(change.path().toString().replace("\"", "\"\"")).append('"').append(',');
+		appendTime(records, change.originalLastModified());
+		records.append(',');
+		appendTime(records, change.originalCreation());
+		records.append(',');
+		appendTime(records, change.originalLastAccess());
+		records.append('\n');
+	}
+
+	private static void appendTime(StringBuilder records, FileTime time) {
+		if (time != null) {
+			records.append(time.toInstant());
+		}
+	}
+
+	private static void write(FileChannel channel, String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+}
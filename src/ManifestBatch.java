@@ -0,0 +1,394 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is for modifying file times listed in a manifest file.
+ * <p>
+ * Each line of manifest is one file, in CSV:
+ * <pre>
+ *     path,lastModified,creation,access
+ * </pre>
+ * or in NDJSON:
+ * <pre>
+ *     {"path": "...", "lastModified": "...", "creation": "...", "access": "..."}
+ * </pre>
+ * Each time is an ISO-8601 instant like {@code 2020-03-31T11:00:08Z} which is set as it is,
+ * or a signed ISO-8601 duration like {@code -P1DT2H} which shifts current time of file.
+ * Empty or missing time is not changed, a line without any time is skipped. Empty lines and lines
+ * starting with {@code #} are ignored, a CSV path containing comma should be quoted with {@code "}.
+ * <p>
+ * Like other modes, a line whose shifted time would be out of range is not written and counted as failed.
+ * Absolute times are set exactly as given, so rolling back a journal restores original times
+ * even if they are in the future. Times are read and written through throttle of {@link FileTimeMod},
+ * and output of each file follows output mode, printed by an {@link OutputSink}.
+ * <p>
+ * Manifest is streamed line by line through a large buffer, and entries are handed to a bounded
+ * worker pool, reading blocks when the pool is behind, so memory doesn't grow with manifest size.
+ */
+class ManifestBatch {
+
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+	private static final int QUEUE_PER_THREAD = 64;
+
+	private final FileTimeMod fileTimeMod;
+	private final Path baseDirectory;
+	private final int parallelism;
+	private final PrintStream err;
+	private final AtomicLong modified = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private OutputSink sink;
+
+	/**
+	 * @param fileTimeMod   output mode, throttle and metrics to apply, streams to print to
+	 * @param baseDirectory directory relative paths in manifest are resolved against
+	 * @param parallelism   number of files modified at the same time
+	 */
+	ManifestBatch(FileTimeMod fileTimeMod, Path baseDirectory, int parallelism) {
+		this.fileTimeMod = fileTimeMod;
+		this.baseDirectory = baseDirectory;
+		this.parallelism = parallelism;
+		this.err = fileTimeMod.err;
+	}
+
+	/**
+	 * Time of one attribute in manifest, either absolute or a shift of current time
+	 */
+	record TimeValue(FileTime absolute, TimeShift shift) {
+
+		static TimeValue parse(String value) {
+			if (value == null || value.isEmpty()) {
+				return null;
+			}
+			char first = value.charAt(0);
+			if (first == '+' || first == '-' || first == 'P' || first == 'p') {
+				try {
+					return new TimeValue(null, TimeShift.ofNanos(Duration.parse(value).toNanos()));
+				} catch (ArithmeticException e) {
+					throw new IllegalArgumentException("duration is too long: " + value);
+				}
+			}
+			return new TimeValue(FileTime.from(Instant.parse(value)), null);
+		}
+
+		boolean isRelative() {
+			return shift != null;
+		}
+
+		FileTime resolve(FileTime currentTime) {
+			return absolute != null ? absolute : shift.apply(currentTime);
+		}
+	}
+
+	/**
+	 * One line of manifest
+	 */
+	record Entry(String path, TimeValue lastModified, TimeValue creation, TimeValue access) {
+
+		boolean isRelative() {
+			return lastModified != null && lastModified.isRelative()
+					|| creation != null && creation.isRelative()
+					|| access != null && access.isRelative();
+		}
+
+		boolean isEmpty() {
+			return lastModified == null && creation == null && access == null;
+		}
+	}
+
+	/**
+	 * modify all files in manifest, return after all of them are done
+	 *
+	 * @param manifest path of manifest file
+	 * @return number of files failed
+	 * @throws IOException if manifest can't be read
+	 */
+	long run(Path manifest) throws IOException {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism,
+				0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(parallelism * QUEUE_PER_THREAD),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try (OutputSink sink = new OutputSink(fileTimeMod.out)) {
+			this.sink = sink;
+			try (FileChannel channel = FileChannel.open(manifest, StandardOpenOption.READ);
+				 BufferedReader reader = new BufferedReader(
+						 Channels.newReader(channel, StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
+				String line;
+				long lineNumber = 0;
+				while ((line = reader.readLine()) != null) {
+					lineNumber++;
+					line = line.strip();
+					if (line.isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+					Entry entry;
+					try {
+						entry = parseLine(line);
+					} catch (IllegalArgumentException | DateTimeParseException e) {
+						err.println("Parsing manifest failed at line " + lineNumber + ": " + e.getMessage());
+						failed.incrementAndGet();
+						continue;
+					}
+					if (!entry.isEmpty()) {
+						executor.execute(() -> apply(entry));
+					}
+				}
+			} finally {
+				// output of all files is added before summary and before sink is closed
+				executor.shutdown();
+				try {
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			printSummary();
+		} finally {
+			this.sink = null;
+		}
+		return failed.get();
+	}
+
+	private void printSummary() {
+		switch (fileTimeMod.outputMode) {
+			case TEXT, SUMMARY -> sink.add("modified " + modified.get() + " file(s), failed " + failed.get()
+					+ System.lineSeparator());
+			case NDJSON -> sink.add("{\"modified\":" + modified.get() + ",\"failed\":" + failed.get() + "}\n");
+			case QUIET -> {
+			}
+		}
+	}
+
+	private void apply(Entry entry) {
+		Path path;
+		try {
+			path = baseDirectory.resolve(entry.path());
+		} catch (InvalidPathException e) {
+			err.println("Get file failed, check file path : " + e.getMessage());
+			failed.incrementAndGet();
+			return;
+		}
+		try {
+			BasicFileAttributes attributes = entry.isRelative() ? fileTimeMod.core.stat(path) : null;
+			FileTime lastModifiedTime = resolve(entry.lastModified(),
+					attributes == null ? null : attributes.lastModifiedTime());
+			FileTime lastAccessTime = resolve(entry.access(), attributes == null ? null : attributes.lastAccessTime());
+			FileTime creationTime = resolve(entry.creation(), attributes == null ? null : attributes.creationTime());
+			Instant latest = Instant.now();
+			TimeValue[] values = {entry.lastModified(), entry.access(), entry.creation()};
+			FileTime[] times = {lastModifiedTime, lastAccessTime, creationTime};
+			for (int i = 0; i < times.length; i++) {
+				// absolute times are taken as they are, only shifts are checked
+				if (values[i] != null && values[i].isRelative() && !FileTimeCore.inRange(times[i], latest)) {
+					err.println("Modify file time failed: " + path + " time after modified is out of range: "
+							+ times[i]);
+					failed.incrementAndGet();
+					return;
+				}
+			}
+			fileTimeMod.core.writeTimes(path, lastModifiedTime, lastAccessTime, creationTime);
+			modified.incrementAndGet();
+			print(path, lastModifiedTime, lastAccessTime, creationTime);
+		} catch (IOException e) {
+			err.println("Modify file time failed: " + path + " " + e.getMessage());
+			failed.incrementAndGet();
+		}
+	}
+
+	private static FileTime resolve(TimeValue value, FileTime currentTime) {
+		return value == null ? null : value.resolve(currentTime);
+	}
+
+	private void print(Path path, FileTime lastModifiedTime, FileTime lastAccessTime, FileTime creationTime) {
+		String[] names = fileTimeMod.outputMode == OutputSink.Mode.NDJSON
+				? new String[]{"lastModified", "access", "creation"}
+				: new String[]{"last modified", "last access", "creation"};
+		FileTime[] times = {lastModifiedTime, lastAccessTime, creationTime};
+		StringBuilder output = new StringBuilder();
+		if (fileTimeMod.outputMode == OutputSink.Mode.TEXT) {
+			output.append("file: ").append(path).append(System.lineSeparator());
+			for (int i = 0; i < times.length; i++) {
+				if (times[i] != null) {
+					output.append("modified ").append(names[i]).append(": ").append(times[i])
+							.append(System.lineSeparator());
+				}
+			}
+		} else if (fileTimeMod.outputMode == OutputSink.Mode.NDJSON) {
+			output.append("{\"path\":");
+			OutputSink.appendJsonString(output, path.toString());
+			for (int i = 0; i < times.length; i++) {
+				if (times[i] != null) {
+					output.append(",\"").append(names[i]).append("\":{\"new\":\"").append(times[i].toInstant())
+							.append("\"}");
+				}
+			}
+			output.append(",\"written\":true}\n");
+		} else {
+			return;
+		}
+		sink.add(output.toString());
+	}
+
+	/**
+	 * parse one line of manifest, in CSV or in NDJSON if it starts with {@code {}
+	 *
+	 * @param line line of manifest, not empty
+	 * @return entry of line
+	 * @throws IllegalArgumentException if line is malformed
+	 */
+	static Entry parseLine(String line) {
+		if (line.charAt(0) == '{') {
+			Map<String, String> fields = parseJsonObject(line);
+			return newEntry(fields.get("path"), fields.get("lastModified"),
+					fields.get("creation"), fields.get("access"));
+		}
+		List<String> fields = splitCsv(line);
+		return newEntry(fields.get(0), field(fields, 1), field(fields, 2), field(fields, 3));
+	}
+
+	private static Entry newEntry(String path, String lastModified, String creation, String access) {
+		if (path == null || path.isEmpty()) {
+			throw new IllegalArgumentException("path is missing");
+		}
+		return new Entry(path, TimeValue.parse(lastModified), TimeValue.parse(creation), TimeValue.parse(access));
+	}
+
+	private static String field(List<String> fields, int index) {
+		return index < fields.size() ? fields.get(index).strip() : null;
+	}
+
+	private static List<String> splitCsv(String line) {
+		List<String> fields = new ArrayList<>(4);
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("unclosed quote");
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * parse a flat JSON object whose values are strings or null
+	 */
+	private static Map<String, String> parseJsonObject(String line) {
+		Map<String, String> fields = new HashMap<>();
+		int[] position = {1};
+		skipSpaces(line, position);
+		if (peek(line, position) == '}') {
+			return fields;
+		}
+		while (true) {
+			skipSpaces(line, position);
+			String key = parseJsonString(line, position);
+			skipSpaces(line, position);
+			expect(line, position, ':');
+			skipSpaces(line, position);
+			if (line.startsWith("null", position[0])) {
+				position[0] += 4;
+			} else {
+				fields.put(key, parseJsonString(line, position));
+			}
+			skipSpaces(line, position);
+			char c = peek(line, position);
+			position[0]++;
+			if (c == '}') {
+				return fields;
+			}
+			if (c != ',') {
+				throw new IllegalArgumentException("expect , or } at " + (position[0] - 1));
+			}
+		}
+	}
+
+	private static String parseJsonString(String line, int[] position) {
+		expect(line, position, '"');
+		StringBuilder value = new StringBuilder();
+		while (true) {
+			char c = peek(line, position);
+			position[0]++;
+			if (c == '"') {
+				return value.toString();
+			}
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			char escaped = peek(line, position);
+			position[0]++;
+			switch (escaped) {
+				case 'b' -> value.append('\b');
+				case 'f' -> value.append('\f');
+				case 'n' -> value.append('\n');
+				case 'r' -> value.append('\r');
+				case 't' -> value.append('\t');
+				case 'u' -> {
+					if (position[0] + 4 > line.length()) {
+						throw new IllegalArgumentException("bad unicode escape");
+					}
+					value.append((char) Integer.parseInt(line.substring(position[0], position[0] + 4), 16));
+					position[0] += 4;
+				}
+				default -> value.append(escaped);
+			}
+		}
+	}
+
+	private static void skipSpaces(String line, int[] position) {
+		while (position[0] < line.length() && Character.isWhitespace(line.charAt(position[0]))) {
+			position[0]++;
+		}
+	}
+
+	private static char peek(String line, int[] position) {
+		if (position[0] >= line.length()) {
+			throw new IllegalArgumentException("unexpected end of line");
+		}
+		return line.charAt(position[0]);
+	}
+
+	private static void expect(String line, int[] position, char expected) {
+		if (peek(line, position) != expected) {
+			throw new IllegalArgumentException("expect " + expected + " at " + position[0]);
+		}
+		position[0]++;
+	}
+}
@@ -0,0 +1,160 @@
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts time spent in each phase of modifying a file, so a slow run shows
+ * whether reading attributes, computing new times or writing them is the limit,
+ * and latency of whole files.
+ * <p>
+ * Every phase has a count, a total, a max and a histogram of latency, all of them are
+ * {@link LongAdder} or {@link LongAccumulator}, so threads recording at the same time don't contend.
+ * Bucket {@code i} of a histogram counts latencies below {@code 2^i} nanoseconds and not below
+ * {@code 2^(i-1)}, so percentiles are upper bounds within a factor of 2.
+ * <p>
+ * {@link #DISABLED} records nothing, it is used when metrics option isn't given.
+ */
+final class Metrics {
+
+	static final Metrics DISABLED = new Metrics(null);
+
+	enum Phase {
+		STAT,
+		COMPUTE,
+		WRITE,
+		/**
+		 * whole file in default mode, from reading its times to writing and printing them
+		 */
+		FILE
+	}
+
+	enum Format {
+		SUMMARY,
+		JSON
+	}
+
+	private static final int BUCKETS = 64;
+
+	private final Format format;
+	private final long startNanos = System.nanoTime();
+	private final LongAdder[] counts = new LongAdder[Phase.values().length];
+	private final LongAdder[] totals = new LongAdder[Phase.values().length];
+	private final LongAccumulator[] maxes = new LongAccumulator[Phase.values().length];
+	private final LongAdder[][] histograms = new LongAdder[Phase.values().length][BUCKETS];
+
+	Metrics(Format format) {
+		this.format = format;
+		if (format == null) {
+			return;
+		}
+		for (int phase = 0; phase < counts.length; phase++) {
+			counts[phase] = new LongAdder();
+			totals[phase] = new LongAdder();
+			maxes[phase] = new LongAccumulator(Math::max, 0);
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				histograms[phase][bucket] = new LongAdder();
+			}
+		}
+	}
+
+	boolean isEnabled() {
+		return format != null;
+	}
+
+	/**
+	 * record one operation of a phase which started at {@code startNanos} and ends now
+	 *
+	 * @param phase      phase of operation
+	 * @param startNanos {@link System#nanoTime()} when operation started
+	 */
+	void record(Phase phase, long startNanos) {
+		if (format == null) {
+			return;
+		}
+		long nanos = Math.max(0, System.nanoTime() - startNanos);
+		int index = phase.ordinal();
+		counts[index].increment();
+		totals[index].add(nanos);
+		maxes[index].accumulate(nanos);
+		histograms[index][Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(nanos))].increment();
+	}
+
+	/**
+	 * upper bound of latency which {@code percent} of operations of phase are not slower than
+	 */
+	private long percentile(int index, double percent) {
+		long count = counts[index].sum();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percent / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += histograms[index][bucket].sum();
+			if (seen >= rank) {
+				return Math.min(bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1, maxes[index].get());
+			}
+		}
+		return maxes[index].get();
+	}
+
+	/**
+	 * print all phases in format of option, nothing is printed if metrics are disabled
+	 *
+	 * @param out stream metrics are printed to
+	 */
+	void print(PrintStream out) {
+		if (format == Format.SUMMARY) {
+			printSummary(out);
+		} else if (format == Format.JSON) {
+			printJson(out);
+		}
+	}
+
+	private void printSummary(PrintStream out) {
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format(Locale.ROOT, "%-8s %10s %12s %10s %10s %10s %10s%n",
+				"phase", "count", "total ms", "mean us", "p50 us", "p99 us", "max us"));
+		for (Phase phase : Phase.values()) {
+			int index = phase.ordinal();
+			long count = counts[index].sum();
+			long total = totals[index].sum();
+			summary.append(String.format(Locale.ROOT, "%-8s %10d %12.3f %10.1f %10.1f %10.1f %10.1f%n",
+					phase.name().toLowerCase(Locale.ROOT), count, total / 1e6, count == 0 ? 0 : total / 1e3 / count,
+					percentile(index, 50) / 1e3, percentile(index, 99) / 1e3, maxes[index].get() / 1e3));
+		}
+		summary.append(String.format(Locale.ROOT, "elapsed %.3f ms%n", (System.nanoTime() - startNanos) / 1e6));
+		out.print(summary);
+	}
+
+	private void printJson(PrintStream out) {
+		StringBuilder json = new StringBuilder("{\"elapsedNanos\":").append(System.nanoTime() - startNanos);
+		for (Phase phase : Phase.values()) {
+			int index = phase.ordinal();
+			json.append(",\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\":{")
+					.append("\"count\":").append(counts[index].sum())
+					.append(",\"totalNanos\":").append(totals[index].sum())
+					.append(",\"p50Nanos\":").append(percentile(index, 50))
+					.append(",\"p99Nanos\":").append(percentile(index, 99))
+					.append(",\"maxNanos\":").append(maxes[index].get())
+					.append(",\"histogram\":[");
+			// only buckets which aren't empty, as [upper bound in nanoseconds, count]
+			boolean first = true;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				long count = histograms[index][bucket].sum();
+				if (count == 0) {
+					continue;
+				}
+				if (!first) {
+					json.append(',');
+				}
+				first = false;
+				json.append('[').append(bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1)
+						.append(',').append(count).append(']');
+			}
+			json.append("]}");
+		}
+		out.println(json.append('}'));
+	}
+}
@@ -2,6 +2,8 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -13,6 +15,7 @@ class OptionAnalysis {
 	private Option increaseOption;
 	private Option lastModifiedOption;
 	private Option creationOption;
+	private Option accessOption;
 	private Option decreaseOption;
 	private Option yearOption;
 	private Option monthOption;
@@ -21,12 +24,40 @@ class OptionAnalysis {
 	private Option minuteOption;
 	private Option secondOption;
 	private Option helpOption;
+	private Option recursiveOption;
+	private Option parallelismOption;
+	private Option batchOption;
+	private Option journalOption;
+	private Option rollbackOption;
+	private Option includeOption;
+	private Option excludeOption;
+	private Option olderThanOption;
+	private Option typeOption;
+	private Option toOption;
+	private Option baseOption;
+	private Option toleranceOption;
+	private Option metricsOption;
+	private Option outputOption;
+	private Option referenceOption;
+	private Option gitOption;
+	private Option maxOpsOption;
+	private Option maxConcurrencyOption;
+	private Option targetLatencyOption;
+	private Option engineOption;
+	private Option stateOption;
+	private Option watchOption;
+	private Option watchDelayOption;
+	private Option archiveOption;
+	private Option scanOption;
+	private Option storeParallelismOption;
 	private Options options;
 	private HelpFormatter helpFormatter;
 	// This set contains options that can not repeat appear in one command
 	private Set<Option> repeatOptions;
 	// This set contains options that can repeat appear in one command
 	private Set<Option> mustHave;
+	// This set contains modes that don't need options in mustHave
+	private Set<Option> independentOptions;
 
 	/**
 	 * initial each option and option list
@@ -34,7 +65,7 @@ class OptionAnalysis {
 	OptionAnalysis() {
 		filePathOption = Option.builder("f").longOpt("file-path").hasArg(true)
 				.argName("file path")
-				.desc("specify the path of file")
+				.desc("specify the path of file, can be repeated in recursive and scan mode")
 				.build();
 		increaseOption = Option.builder("I").longOpt("increase").hasArg(false)
 				.desc("increase file time, it's unit could be year, month, day, hour, minute or second")
@@ -49,6 +80,9 @@ class OptionAnalysis {
 		creationOption = Option.builder("c").longOpt("create-time").hasArg(false)
 				.desc("specify for modify create file time")
 				.build();
+		accessOption = Option.builder("a").longOpt("access-time").hasArg(false)
+				.desc("specify for modify last access file time")
+				.build();
 		yearOption = Option.builder("y").longOpt("year").hasArg(true)
 				.argName("number of year")
 				.desc("file time operation unit of year")
@@ -81,12 +115,129 @@ class OptionAnalysis {
 		helpOption = Option.builder("h").longOpt("help").hasArg(false)
 				.desc("show help information")
 				.build();
+		recursiveOption = Option.builder("r").longOpt("recursive").hasArg(false)
+				.desc("modify file time of every file and directory under file path")
+				.build();
+		parallelismOption = Option.builder("p").longOpt("parallelism").hasArg(true)
+				.argName("number of threads")
+				.desc("number of files modified at the same time in recursive and batch mode, number of processors in default")
+				.build();
+		batchOption = Option.builder("b").longOpt("batch").hasArg(true)
+				.argName("manifest file")
+				.desc("modify times of files listed in manifest, each line is \"path,lastModified,creation,access\" "
+						+ "or a JSON object with same keys, time is an ISO-8601 instant or a signed ISO-8601 duration")
+				.build();
+		journalOption = Option.builder("j").longOpt("journal").hasArg(true)
+				.argName("journal file")
+				.desc("check all files before any of them is modified, and record original times to journal file, "
+						+ "nothing is modified if any time is out of range")
+				.build();
+		rollbackOption = Option.builder("R").longOpt("rollback").hasArg(true)
+				.argName("journal file")
+				.desc("restore original times recorded in journal file")
+				.build();
+		includeOption = Option.builder().longOpt("include").hasArg(true)
+				.argName("pattern")
+				.desc("in recursive mode, only modify entries whose name matches glob, or regex with \"regex:\" prefix, "
+						+ "can be given many times")
+				.build();
+		excludeOption = Option.builder().longOpt("exclude").hasArg(true)
+				.argName("pattern")
+				.desc("in recursive mode, skip entries whose name matches glob, or regex with \"regex:\" prefix, "
+						+ "excluded directories are not walked, can be given many times")
+				.build();
+		olderThanOption = Option.builder().longOpt("older-than").hasArg(true)
+				.argName("time")
+				.desc("in recursive mode, only modify entries last modified before an ISO-8601 instant, "
+						+ "or before a duration like P30D ago")
+				.build();
+		typeOption = Option.builder().longOpt("type").hasArg(true)
+				.argName("f|d")
+				.desc("in recursive mode, only modify files (f) or directories (d)")
+				.build();
+		toOption = Option.builder("T").longOpt("to").hasArg(true)
+				.argName("instant")
+				.desc("set file time to an ISO-8601 instant like 2020-03-31T11:00:08Z, instead of increase or decrease")
+				.build();
+		baseOption = Option.builder().longOpt("base").hasArg(true)
+				.argName("instant")
+				.desc("increase or decrease this ISO-8601 instant instead of file time, "
+						+ "so all files get the same time and running again changes nothing")
+				.build();
+		toleranceOption = Option.builder().longOpt("tolerance").hasArg(true)
+				.argName("milliseconds")
+				.desc("time which differs from its new time not more than this is not written, 0 in default")
+				.build();
+		metricsOption = Option.builder().longOpt("metrics").hasArg(true)
+				.argName("summary|json")
+				.desc("print count and latency of reading, computing and writing times when run ends, "
+						+ "as a table (summary) or one JSON line (json)")
+				.build();
+		outputOption = Option.builder().longOpt("output").hasArg(true)
+				.argName("text|quiet|summary|ndjson")
+				.desc("print times of each file as text (default), nothing (quiet), only count of modified files "
+						+ "(summary), or one JSON object per line for each file (ndjson)")
+				.build();
+		referenceOption = Option.builder().longOpt("reference").hasArg(true)
+				.argName("reference path")
+				.desc("copy times of reference file instead of increase or decrease, in recursive mode "
+						+ "each entry gets times of the entry at same relative path under reference")
+				.build();
+		gitOption = Option.builder().longOpt("git")
+				.desc("set last modified time of each tracked file under file path to time of "
+						+ "last commit which changed it, file path must be in a git work tree")
+				.build();
+		maxOpsOption = Option.builder().longOpt("max-ops").hasArg(true)
+				.argName("operations per second")
+				.desc("max number of reads and writes of file times per second, not limited in default")
+				.build();
+		maxConcurrencyOption = Option.builder().longOpt("max-concurrency").hasArg(true)
+				.argName("number of operations")
+				.desc("max number of reads and writes of file times at the same time, not limited in default")
+				.build();
+		targetLatencyOption = Option.builder().longOpt("target-latency").hasArg(true)
+				.argName("milliseconds")
+				.desc("lower rate of reads and writes while their mean latency is above this, "
+						+ "and raise it up to max-ops again when it is not")
+				.build();
+		engineOption = Option.builder().longOpt("engine").hasArg(true)
+				.argName("path|secure")
+				.desc("in recursive mode, read and write each entry by its path (default), or relative to "
+						+ "its open directory (secure), which saves path lookups on deep trees where supported")
+				.build();
+		stateOption = Option.builder().longOpt("state").hasArg(true)
+				.argName("index file")
+				.desc("remember files done in index file, files not changed since are skipped in later runs, "
+						+ "it is created if it doesn't exist")
+				.build();
+		watchOption = Option.builder().longOpt("watch")
+				.desc("keep watching directory of file path, and modify each file arriving below it "
+						+ "once it is written, until interrupted")
+				.build();
+		watchDelayOption = Option.builder().longOpt("watch-delay").hasArg(true)
+				.argName("milliseconds")
+				.desc("in watch mode, modify files after no event comes for this time, 500 in default")
+				.build();
+		archiveOption = Option.builder().longOpt("archive")
+				.desc("file path is a ZIP or JAR archive, shift times of its entries in place, "
+						+ "times of archive itself are only modified if they are specified")
+				.build();
+		scanOption = Option.builder().longOpt("scan")
+				.desc("only read times of file path and all entries below it, print their distribution, "
+						+ "and with increase, decrease or to, number of entries which would be out of range")
+				.build();
+		storeParallelismOption = Option.builder().longOpt("store-parallelism").hasArg(true)
+				.argName("path=number of threads")
+				.desc("number of files modified at the same time on file store of path, each file store "
+						+ "has its own threads, parallelism is used for stores not given, can be repeated")
+				.build();
 		options = new Options();
 		options.addOption(filePathOption);
 		options.addOption(increaseOption);
 		options.addOption(decreaseOption);
 		options.addOption(lastModifiedOption);
 		options.addOption(creationOption);
+		options.addOption(accessOption);
 		options.addOption(yearOption);
 		options.addOption(monthOption);
 		options.addOption(dayOption);
@@ -94,14 +245,51 @@ class OptionAnalysis {
 		options.addOption(minuteOption);
 		options.addOption(secondOption);
 		options.addOption(helpOption);
-		helpFormatter = new HelpFormatter();
+		options.addOption(recursiveOption);
+		options.addOption(parallelismOption);
+		options.addOption(batchOption);
+		options.addOption(journalOption);
+		options.addOption(rollbackOption);
+		options.addOption(includeOption);
+		options.addOption(excludeOption);
+		options.addOption(olderThanOption);
+		options.addOption(typeOption);
+		options.addOption(toOption);
+		options.addOption(baseOption);
+		options.addOption(toleranceOption);
+		options.addOption(metricsOption);
+		options.addOption(outputOption);
+		options.addOption(referenceOption);
+		options.addOption(gitOption);
+		options.addOption(maxOpsOption);
+		options.addOption(maxConcurrencyOption);
+		options.addOption(targetLatencyOption);
+		options.addOption(engineOption);
+		options.addOption(stateOption);
+		options.addOption(watchOption);
+		options.addOption(watchDelayOption);
+		options.addOption(archiveOption);
+		options.addOption(scanOption);
+		options.addOption(storeParallelismOption);
 		repeatOptions = new HashSet<>();
 		repeatOptions.add(increaseOption);
 		repeatOptions.add(decreaseOption);
 		repeatOptions.add(helpOption);
+		repeatOptions.add(batchOption);
+		repeatOptions.add(rollbackOption);
+		repeatOptions.add(toOption);
+		repeatOptions.add(referenceOption);
+		repeatOptions.add(gitOption);
 		mustHave = new HashSet<>();
 		mustHave.add(lastModifiedOption);
 		mustHave.add(creationOption);
+		mustHave.add(accessOption);
+		independentOptions = new HashSet<>();
+		independentOptions.add(batchOption);
+		independentOptions.add(rollbackOption);
+		independentOptions.add(gitOption);
+		independentOptions.add(archiveOption);
+		independentOptions.add(scanOption);
 	}
 
 	/**
@@ -113,17 +301,41 @@ class OptionAnalysis {
 	}
 
 	public void printHelp() {
-		helpFormatter.printHelp("ftm",
+		printHelp(System.out);
+	}
+
+	/**
+	 * print help information to specified stream
+	 *
+	 * @param out stream help information is printed to
+	 */
+	public void printHelp(PrintStream out) {
+		// help is only printed on errors, formatter is created when it's needed
+		if (helpFormatter == null) {
+			helpFormatter = new HelpFormatter();
+		}
+		PrintWriter writer = new PrintWriter(out);
+		helpFormatter.printHelp(writer, helpFormatter.getWidth(), "ftm",
 				"""
-						This program is used to modify lastModified and creation time of specified file,one of increase option and decrease option must be specified.
-						create and last modified option must be specified one or both of them.
+						This program is used to modify lastModified, creation and last access time of specified file,one of increase option and decrease option must be specified.
+						create, last modified and last access option must be specified one or more of them.
 						other option is optional.
 						example:
 						    ftm -Il -y 9 -m 1 -d 1, This will increase file last modified time 9 years 1 month and 1 day
 						    ftm -Dc -m 10, This will only increase file create time 10 days
+						    ftm -lc -T 2020-03-31T11:00:08Z -f file, This will set last modified and create time, times at it already are skipped
+						    ftm -lr --reference src -f dst, This will copy last modified time of each file under src to same file under dst
+						    ftm --git -f repo, This will set last modified time of each tracked file to time of its last commit
+						    ftm -I -H 1 --archive -f app.jar, This will increase time of each entry in app.jar 1 hour
+						    ftm -Dl -y 10 --scan -f dir, This will only count files under dir which would be out of range
+						    ftm -Ilr -d 1 -f /data -f /mnt/nfs --store-parallelism /mnt/nfs=4, This will modify both trees at the same time, 4 files at a time on /mnt/nfs
+						    ftm -Ilr -d 1 -j journal.csv -f dir, This will check all files first and record original times to journal.csv
+						    ftm -R journal.csv, This will restore times recorded in journal.csv
+						    ftm -b manifest.csv -p 16, This will modify files listed in manifest.csv, 16 files at the same time
+						    ftm -Ilr -d 1 -p 16 -f dir, This will increase last modified time of every file under dir 1 day, 16 files at the same time
 						
 						""",
-				options, """
+				options, helpFormatter.getLeftPadding(), helpFormatter.getDescPadding(), """
                         
 						Max value of each argument:
 						    year : 30
@@ -141,6 +353,7 @@ class OptionAnalysis {
 						
 						issue report: https://github.com/fresh-bitbird/file_time_modifier/issues.""",
 				true);
+		writer.flush();
 	}
 
 	public Set<Option> getRepeatOptions() {
@@ -150,4 +363,8 @@ class OptionAnalysis {
 	public Set<Option> getMustHave() {
 		return mustHave;
 	}
+
+	public Set<Option> getIndependentOptions() {
+		return independentOptions;
+	}
 }
@@ -0,0 +1,197 @@
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+
+import java.io.PrintStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * This class prints output of many files from one thread.
+ * <p>
+ * Workers add the whole output of a file to a bounded queue, one writer thread drains the queue
+ * and prints output of many files at once, so output of files is never mixed and workers don't
+ * wait for each print while the queue has room.
+ * <p>
+ * Hand-off is not non-blocking: if output is slower than workers for longer than the queue holds,
+ * e.g. into a pipe which is read slowly, {@link #add(String)} waits until writer takes from the queue.
+ * Workers are slowed down to the speed of output in that case, which is chosen over memory growing
+ * with the tree, or over dropping output. Writer flushes whenever the queue is empty, so output isn't
+ * held back when files are modified slowly. Text is encoded by the stream, with its own charset.
+ */
+final class OutputSink implements AutoCloseable {
+
+	/**
+	 * What is printed for each file and at the end of a run
+	 */
+	enum Mode {
+		/**
+		 * current and new times of each file as text, and a summary
+		 */
+		TEXT,
+		/**
+		 * nothing but errors
+		 */
+		QUIET,
+		/**
+		 * only the summary
+		 */
+		SUMMARY,
+		/**
+		 * one JSON object per line for each file, and one for the summary
+		 */
+		NDJSON
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int QUEUE_CAPACITY = 1 << 14;
+	/**
+	 * Added by close after all output, compared by identity
+	 */
+	private static final String END = new String();
+
+	private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+	private final PrintStream out;
+	private final Thread thread;
+	private boolean closed;
+
+	/**
+	 * start writer thread
+	 *
+	 * @param out stream output is printed to
+	 */
+	OutputSink(PrintStream out) {
+		this.out = out;
+		thread = new Thread(this::drain, "ftm-output");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * get output mode from output option
+	 *
+	 * @param commandLine command(s) from arguments
+	 * @return mode of option, {@link Mode#TEXT} if it isn't given
+	 * @throws ParseException if mode is invalid
+	 */
+	static Mode mode(CommandLine commandLine) throws ParseException {
+		String value = commandLine.getOptionValue("output");
+		if (value == null) {
+			return Mode.TEXT;
+		}
+		return switch (value) {
+			case "text" -> Mode.TEXT;
+			case "quiet" -> Mode.QUIET;
+			case "summary" -> Mode.SUMMARY;
+			case "ndjson" -> Mode.NDJSON;
+			default -> throw new ParseException("invalid value of output: " + value
+					+ ", it should be text, quiet, summary or ndjson");
+		};
+	}
+
+	/**
+	 * add output to queue, it waits while queue is full
+	 *
+	 * @param text output of one file, it is printed as a whole
+	 */
+	void add(String text) {
+		put(text);
+	}
+
+	/**
+	 * put text to queue, an interrupt doesn't lose it, it is kept for the caller
+	 */
+	private void put(String text) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(text);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void drain() {
+		StringBuilder pending = new StringBuilder(BUFFER_SIZE);
+		try {
+			while (true) {
+				String text = queue.poll();
+				if (text == null) {
+					print(pending);
+					out.flush();
+					text = queue.take();
+				}
+				if (text == END) {
+					print(pending);
+					out.flush();
+					return;
+				}
+				pending.append(text);
+				if (pending.length() >= BUFFER_SIZE) {
+					print(pending);
+				}
+			}
+		} catch (InterruptedException e) {
+			// writer thread is only interrupted when the JVM exits
+		}
+	}
+
+	private void print(StringBuilder pending) {
+		if (pending.length() > 0) {
+			out.print(pending);
+			pending.setLength(0);
+		}
+	}
+
+	/**
+	 * print all output added and stop writer thread
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		put(END);
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * append text as a JSON string with quotes
+	 */
+	static void appendJsonString(StringBuilder json, String text) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"' -> json.append("\\\"");
+				case '\\' -> json.append("\\\\");
+				case '\n' -> json.append("\\n");
+				case '\r' -> json.append("\\r");
+				case '\t' -> json.append("\\t");
+				default -> {
+					if (c < 0x20) {
+						json.append(String.format("\\u%04x", (int) c));
+					} else {
+						json.append(c);
+					}
+				}
+			}
+		}
+		json.append('"');
+	}
+}
@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class copies times from a reference tree to a target tree, entries are matched by relative path,
+ * like {@code touch -r} for every file of a tree.
+ * <p>
+ * Both trees are walked together, each pair of directories by its own fork/join task. A task reads
+ * attributes of the reference directory into a map by name, then lists the target directory and
+ * looks each entry up, so only one directory of reference is held in memory by a task,
+ * whatever the size of the tree. Directories which exist in both trees are walked further.
+ * <p>
+ * Times are copied as they are, they aren't checked against range. Symbolic links are not
+ * followed and not modified, special files are skipped, entries of target missing from reference
+ * are counted and kept. Changes of each entry are printed like those of a shift, in output mode.
+ */
+class ReferenceCopy {
+
+	private final FileTimeMod fileTimeMod;
+	private final int parallelism;
+	private final PrintStream out;
+	private final PrintStream err;
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder missing = new LongAdder();
+
+	/**
+	 * @param fileTimeMod selected times, filter and tolerance to apply
+	 * @param parallelism number of directories walked at the same time
+	 */
+	ReferenceCopy(FileTimeMod fileTimeMod, int parallelism) {
+		this.fileTimeMod = fileTimeMod;
+		this.parallelism = parallelism;
+		this.out = fileTimeMod.out;
+		this.err = fileTimeMod.err;
+	}
+
+	/**
+	 * copy times of reference to root, or to root and all entries below it
+	 *
+	 * @param reference file or root of reference tree
+	 * @param root      file or root of target tree
+	 * @param recursive copy times of all entries below root
+	 * @return number of entries failed, printed to error stream already
+	 * @throws IOException if attributes of reference or root can't be read, or root can't be modified
+	 */
+	long run(Path reference, Path root, boolean recursive) throws IOException {
+		BasicFileAttributes referenceAttributes = fileTimeMod.core.stat(reference, LinkOption.NOFOLLOW_LINKS);
+		BasicFileAttributes attributes = fileTimeMod.core.stat(root, LinkOption.NOFOLLOW_LINKS);
+		Path name = root.getFileName() == null ? root : root.getFileName();
+		try (OutputSink sink = new OutputSink(out)) {
+			fileTimeMod.sink = sink;
+			if (!attributes.isOther() && !referenceAttributes.isOther() && fileTimeMod.filter.accept(name, attributes)) {
+				copy(root, attributes, referenceAttributes, recursive);
+			}
+			if (recursive && attributes.isDirectory() && referenceAttributes.isDirectory()) {
+				ForkJoinPool pool = new ForkJoinPool(parallelism);
+				try {
+					pool.invoke(new DirectoryTask(reference, root));
+				} finally {
+					pool.shutdown();
+				}
+			}
+			fileTimeMod.printSummary();
+			if (missing.sum() > 0 && (fileTimeMod.outputMode == OutputSink.Mode.TEXT
+					|| fileTimeMod.outputMode == OutputSink.Mode.SUMMARY)) {
+				fileTimeMod.print(missing.sum() + " file(s) are not in reference, not modified"
+						+ System.lineSeparator());
+			}
+		} finally {
+			fileTimeMod.sink = null;
+		}
+		return failed.sum();
+	}
+
+	/**
+	 * set selected times of path to those of reference, times equal within tolerance are skipped,
+	 * then print changes
+	 */
+	private void copy(Path path, BasicFileAttributes attributes, BasicFileAttributes reference, boolean showPath)
+			throws IOException {
+		List<FileTimeModifier.Change> changes = new ArrayList<>(3);
+		FileTime lastModified = null;
+		FileTime lastAccess = null;
+		FileTime creation = null;
+		if (fileTimeMod.core.modifyLastModified) {
+			lastModified = select(FileTimeModifier.Attribute.LAST_MODIFIED, attributes.lastModifiedTime(),
+					reference.lastModifiedTime(), changes);
+		}
+		if (fileTimeMod.core.modifyLastAccess) {
+			lastAccess = select(FileTimeModifier.Attribute.LAST_ACCESS, attributes.lastAccessTime(),
+					reference.lastAccessTime(), changes);
+		}
+		if (fileTimeMod.core.modifyCreation) {
+			creation = select(FileTimeModifier.Attribute.CREATION, attributes.creationTime(),
+					reference.creationTime(), changes);
+		}
+		if (lastModified != null || lastAccess != null || creation != null) {
+			fileTimeMod.core.writeTimes(path, lastModified, lastAccess, creation);
+			fileTimeMod.core.modifiedFiles.increment();
+		}
+		fileTimeMod.printChanges(path, changes, showPath);
+	}
+
+	/**
+	 * @return time of reference, or null if current time is at it already
+	 */
+	private FileTime select(FileTimeModifier.Attribute attribute, FileTime current, FileTime reference,
+							List<FileTimeModifier.Change> changes) {
+		boolean unchanged = fileTimeMod.core.isUnchanged(current, reference);
+		if (unchanged) {
+			fileTimeMod.core.skippedTimes.increment();
+		}
+		changes.add(new FileTimeModifier.Change(attribute, current, reference,
+				unchanged ? FileTimeModifier.Status.UNCHANGED : FileTimeModifier.Status.MODIFIED));
+		return unchanged ? null : reference;
+	}
+
+	/**
+	 * Task for one pair of directories, it copies times of entries of the reference directory
+	 * to entries of the same name and forks a new task for each pair of sub directories.
+	 */
+	private class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path reference;
+		private final Path directory;
+
+		DirectoryTask(Path reference, Path directory) {
+			this.reference = reference;
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute() {
+			EntryFilter filter = fileTimeMod.filter;
+			// build side of the join: attributes of reference entries by name
+			Map<String, BasicFileAttributes> references = new HashMap<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(reference)) {
+				for (Path entry : entries) {
+					if (!filter.acceptName(entry.getFileName())) {
+						continue;
+					}
+					try {
+						BasicFileAttributes attributes = fileTimeMod.core.stat(entry, LinkOption.NOFOLLOW_LINKS);
+						if (!attributes.isSymbolicLink()) {
+							references.put(entry.getFileName().toString(), attributes);
+						}
+					} catch (IOException e) {
+						err.println("Get file time failed: " + entry + " " + e.getMessage());
+						failed.increment();
+					}
+				}
+			} catch (IOException e) {
+				err.println("List directory failed: " + reference + " " + e.getMessage());
+				failed.increment();
+				return;
+			}
+			List<DirectoryTask> subTasks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+				for (Path entry : entries) {
+					Path name = entry.getFileName();
+					if (!filter.acceptName(name)) {
+						continue;
+					}
+					BasicFileAttributes referenceAttributes = references.get(name.toString());
+					if (referenceAttributes == null) {
+						missing.increment();
+						continue;
+					}
+					BasicFileAttributes attributes;
+					try {
+						attributes = fileTimeMod.core.stat(entry, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException e) {
+						err.println("Get file time failed: " + entry + " " + e.getMessage());
+						failed.increment();
+						continue;
+					}
+					if (attributes.isSymbolicLink() || attributes.isOther() || referenceAttributes.isOther()) {
+						continue;
+					}
+					if (attributes.isDirectory() && referenceAttributes.isDirectory()) {
+						DirectoryTask subTask = new DirectoryTask(reference.resolve(name.toString()), entry);
+						subTask.fork();
+						subTasks.add(subTask);
+					}
+					if (filter.accept(name, attributes)) {
+						try {
+							copy(entry, attributes, referenceAttributes, true);
+						} catch (IOException e) {
+							err.println("Modify file time failed: " + entry + " " + e.getMessage());
+							failed.increment();
+						}
+					}
+				}
+			} catch (IOException e) {
+				err.println("List directory failed: " + directory + " " + e.getMessage());
+				failed.increment();
+			}
+			for (DirectoryTask subTask : subTasks) {
+				subTask.join();
+			}
+		}
+	}
+}
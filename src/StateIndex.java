@@ -0,0 +1,416 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class remembers files {@code ftm} has done, so a later run skips files nobody changed since.
+ * <p>
+ * Index is a hash table with open addressing in a memory-mapped file. Each slot is five longs:
+ * two independent hashes of file key, or of path where file system has no file key, size of file,
+ * last modified time in microseconds the file had when {@code ftm} was done with it, and fingerprint
+ * of the operation which did it. A file is skipped if both hashes are found with same size, same
+ * operation and last modified time within tolerance, a slot of another operation is overwritten.
+ * <p>
+ * First hash of a slot is written last and read with volatile access, so a slot is never found before
+ * it is complete. Other longs of a slot are read and written under one of {@value #STRIPES} locks
+ * by slot, so files are looked up and recorded from many threads at the same time.
+ * <p>
+ * When table is {@value #MAX_LOAD_PERCENT}% full, all threads are held by a read-write lock while
+ * slots are copied out to a temporary file, the mapping is extended in place to twice as large
+ * and slots are inserted again. Index file is never replaced, so growing works where a mapped file
+ * can't be replaced, the old mapping is released when it is collected.
+ * <p>
+ * Layout: magic, version, capacity and count as ints, then {@code capacity} slots. Count is
+ * {@value #OPEN} while index is open, it is counted again after a run which didn't close the index,
+ * and {@value #GROWING} while table grows, index is started over after a run which stopped there.
+ */
+final class StateIndex implements AutoCloseable {
+
+	private static final int MAGIC = 0x46544d53; // FTMS
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+	private static final int SLOT_SIZE = 40;
+	private static final int INITIAL_CAPACITY = 1 << 12;
+	private static final int MAX_LOAD_PERCENT = 70;
+	private static final int STRIPES = 64;
+	private static final int OPEN = -1;
+	private static final int GROWING = -2;
+	private static final long EMPTY = 0;
+	private static final int COPY_BUFFER_SLOTS = 1 << 12;
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private final Path file;
+	private final FileChannel channel;
+	private final long operation;
+	private final ReadWriteLock resize = new ReentrantReadWriteLock();
+	private final Object[] stripes = new Object[STRIPES];
+	private final AtomicInteger count;
+	private MappedByteBuffer buffer;
+	private int capacity;
+
+	private StateIndex(Path file, FileChannel channel, MappedByteBuffer buffer, int capacity, int count,
+					   long operation) {
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.count = new AtomicInteger(count);
+		this.operation = operation;
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+		buffer.putInt(12, OPEN);
+	}
+
+	/**
+	 * open index file, it is created if it doesn't exist, and started over if it is of an older version
+	 * or a run stopped while it grew
+	 *
+	 * @param file      index file
+	 * @param operation fingerprint of shift or target and selected times, see {@link #fingerprint}
+	 * @return opened index
+	 * @throws IOException if file can't be opened, or it isn't an index
+	 */
+	static StateIndex open(Path file, long operation) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) {
+				return new StateIndex(file, channel, create(channel, INITIAL_CAPACITY), INITIAL_CAPACITY, 0, operation);
+			}
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("invalid state index: " + file);
+			}
+			// header is checked before file is mapped, so a file which is started over is never mapped
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException("invalid state index: " + file);
+				}
+			}
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("invalid state index: " + file);
+			}
+			int capacity = header.getInt(8);
+			int count = header.getInt(12);
+			if (header.getInt(4) != VERSION || count == GROWING) {
+				// index only saves work, it is started over instead of failing the run
+				channel.truncate(0);
+				return new StateIndex(file, channel, create(channel, INITIAL_CAPACITY), INITIAL_CAPACITY, 0, operation);
+			}
+			if (capacity <= 0 || Integer.bitCount(capacity) != 1
+					|| channel.size() != HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+				throw new IOException("invalid state index: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			if (count == OPEN) {
+				count = 0;
+				for (int slot = 0; slot < capacity; slot++) {
+					if (buffer.getLong(offset(slot)) != EMPTY) {
+						count++;
+					}
+				}
+			}
+			return new StateIndex(file, channel, buffer, capacity, count, operation);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static MappedByteBuffer create(FileChannel channel, int capacity) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				HEADER_SIZE + (long) capacity * SLOT_SIZE);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, capacity);
+		buffer.putInt(12, 0);
+		return buffer;
+	}
+
+	/**
+	 * @param target             time all files are set to, or null
+	 * @param shift              shift of times if there is no target, or null
+	 * @param modifyLastModified last modified time is selected
+	 * @param modifyLastAccess   last access time is selected
+	 * @param modifyCreation     creation time is selected
+	 * @return fingerprint of operation, files done by another operation aren't skipped
+	 */
+	static long fingerprint(FileTime target, TimeShift shift, boolean modifyLastModified, boolean modifyLastAccess,
+							boolean modifyCreation) {
+		long fingerprint = target != null ? 1 : shift != null ? 2 : 3;
+		fingerprint = fingerprint * 31 + (target != null ? target.to(TimeUnit.MICROSECONDS)
+				: shift != null ? shift.toNanos() : 0);
+		fingerprint = fingerprint * 31 + (modifyLastModified ? 1 : 0) + (modifyLastAccess ? 2 : 0)
+				+ (modifyCreation ? 4 : 0);
+		fingerprint = mix(fingerprint);
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	/**
+	 * @param path       path of file
+	 * @param attributes current attributes of file
+	 * @param tolerance  max difference of last modified time in microseconds
+	 * @return true if file is in index with same size and last modified time, done by same operation
+	 */
+	boolean isUnchanged(Path path, BasicFileAttributes attributes, long tolerance) {
+		String text = text(path, attributes);
+		long key = key(text);
+		long check = check(text);
+		resize.readLock().lock();
+		try {
+			int offset = find(key, check);
+			if (offset < 0) {
+				return false;
+			}
+			synchronized (stripe(offset)) {
+				return buffer.getLong(offset + 32) == operation
+						&& buffer.getLong(offset + 16) == attributes.size()
+						&& Math.abs(buffer.getLong(offset + 24) - micros(attributes.lastModifiedTime())) <= tolerance;
+			}
+		} finally {
+			resize.readLock().unlock();
+		}
+	}
+
+	/**
+	 * record that ftm is done with file
+	 *
+	 * @param path         path of file
+	 * @param attributes   attributes of file before it was modified
+	 * @param lastModified last modified time of file now
+	 * @throws IOException if index can't be grown
+	 */
+	void put(Path path, BasicFileAttributes attributes, FileTime lastModified) throws IOException {
+		String text = text(path, attributes);
+		long key = key(text);
+		long check = check(text);
+		long size = attributes.size();
+		long micros = micros(lastModified);
+		while (true) {
+			resize.readLock().lock();
+			try {
+				if ((count.get() + 1) * 100L <= (long) capacity * MAX_LOAD_PERCENT) {
+					insert(key, check, size, micros);
+					return;
+				}
+			} finally {
+				resize.readLock().unlock();
+			}
+			grow();
+		}
+	}
+
+	/**
+	 * write slot of key, in an empty slot if key isn't in table, holding read lock of resize
+	 */
+	private void insert(long key, long check, long size, long micros) {
+		int slot = home(key, capacity);
+		while (true) {
+			int offset = offset(slot);
+			long found = (long) LONG.getVolatile(buffer, offset);
+			if (found == EMPTY || found == key) {
+				synchronized (stripe(offset)) {
+					found = (long) LONG.getVolatile(buffer, offset);
+					if (found == EMPTY) {
+						buffer.putLong(offset + 8, check);
+						write(buffer, offset, size, micros, operation);
+						LONG.setVolatile(buffer, offset, key);
+						count.incrementAndGet();
+						return;
+					}
+					if (found == key && buffer.getLong(offset + 8) == check) {
+						write(buffer, offset, size, micros, operation);
+						return;
+					}
+				}
+			}
+			slot = slot + 1 == capacity ? 0 : slot + 1;
+		}
+	}
+
+	/**
+	 * @return offset of slot of key, or -1 if key isn't in table
+	 */
+	private int find(long key, long check) {
+		int slot = home(key, capacity);
+		while (true) {
+			int offset = offset(slot);
+			long found = (long) LONG.getVolatile(buffer, offset);
+			if (found == key && buffer.getLong(offset + 8) == check) {
+				return offset;
+			}
+			if (found == EMPTY) {
+				return -1;
+			}
+			slot = slot + 1 == capacity ? 0 : slot + 1;
+		}
+	}
+
+	/**
+	 * copy slots out to a temporary file, extend mapping to twice as large, then insert slots again
+	 */
+	private void grow() throws IOException {
+		resize.writeLock().lock();
+		try {
+			if ((count.get() + 1) * 100L <= (long) capacity * MAX_LOAD_PERCENT) {
+				// another thread grew it already
+				return;
+			}
+			int newCapacity = capacity * 2;
+			if (HEADER_SIZE + (long) newCapacity * SLOT_SIZE > Integer.MAX_VALUE) {
+				throw new IOException("state index is full: " + file);
+			}
+			Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.DELETE_ON_CLOSE)) {
+				long tableSize = (long) capacity * SLOT_SIZE;
+				for (long position = 0; position < tableSize; ) {
+					position += channel.transferTo(HEADER_SIZE + position, tableSize - position, tempChannel);
+				}
+				buffer.putInt(12, GROWING);
+				buffer.force();
+				// old mapping is released when it is collected
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+				byte[] zeros = new byte[COPY_BUFFER_SLOTS * SLOT_SIZE];
+				for (int offset = HEADER_SIZE; offset < HEADER_SIZE + tableSize; offset += zeros.length) {
+					buffer.put(offset, zeros, 0, (int) Math.min(zeros.length, HEADER_SIZE + tableSize - offset));
+				}
+				capacity = newCapacity;
+				buffer.putInt(8, capacity);
+				ByteBuffer slots = ByteBuffer.allocate(COPY_BUFFER_SLOTS * SLOT_SIZE);
+				for (long position = 0; position < tableSize; ) {
+					slots.clear();
+					while (slots.hasRemaining() && position + slots.position() < tableSize) {
+						if (tempChannel.read(slots, position + slots.position()) < 0) {
+							throw new IOException("state index is truncated: " + temp);
+						}
+					}
+					slots.flip();
+					position += slots.limit();
+					for (int offset = 0; offset + SLOT_SIZE <= slots.limit(); offset += SLOT_SIZE) {
+						long key = slots.getLong(offset);
+						if (key != EMPTY) {
+							reinsert(key, slots, offset);
+						}
+					}
+				}
+				buffer.putInt(12, OPEN);
+			}
+		} finally {
+			resize.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * insert a slot read from old table into a new table, holding write lock of resize
+	 */
+	private void reinsert(long key, ByteBuffer slots, int from) {
+		int slot = home(key, capacity);
+		while (buffer.getLong(offset(slot)) != EMPTY) {
+			slot = slot + 1 == capacity ? 0 : slot + 1;
+		}
+		int offset = offset(slot);
+		buffer.putLong(offset + 8, slots.getLong(from + 8));
+		write(buffer, offset, slots.getLong(from + 16), slots.getLong(from + 24), slots.getLong(from + 32));
+		buffer.putLong(offset, key);
+	}
+
+	private static void write(MappedByteBuffer buffer, int offset, long size, long lastModified, long operation) {
+		buffer.putLong(offset + 16, size);
+		buffer.putLong(offset + 24, lastModified);
+		buffer.putLong(offset + 32, operation);
+	}
+
+	private Object stripe(int offset) {
+		return stripes[(offset / SLOT_SIZE) & (STRIPES - 1)];
+	}
+
+	private static int home(long key, int capacity) {
+		return (int) (key ^ (key >>> 32)) & (capacity - 1);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	private static long micros(FileTime time) {
+		return time.to(TimeUnit.MICROSECONDS);
+	}
+
+	private static String text(Path path, BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		return fileKey != null ? fileKey.toString() : path.toAbsolutePath().toString();
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of file key or path, never {@link #EMPTY}
+	 */
+	private static long key(String text) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash == EMPTY ? 1 : hash;
+	}
+
+	/**
+	 * second hash of file key or path, independent of {@link #key}, so two files are only taken as one
+	 * if both 64-bit hashes collide
+	 */
+	private static long check(String text) {
+		long hash = text.length();
+		for (int i = 0; i < text.length(); i++) {
+			hash = (hash + text.charAt(i)) * 0x9e3779b97f4a7c15L;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * finalizer of MurmurHash3, each bit of result depends on all bits of value
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	/**
+	 * write index to disk and close it
+	 */
+	@Override
+	public void close() throws IOException {
+		resize.writeLock().lock();
+		try {
+			if (buffer == null) {
+				return;
+			}
+			// an index which failed to grow is left marked, it is started over when it is opened
+			if (buffer.getInt(12) == OPEN) {
+				buffer.putInt(12, count.get());
+			}
+			buffer.force();
+			buffer = null;
+			channel.close();
+		} finally {
+			resize.writeLock().unlock();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class limits reads and writes of file attributes, so a large run doesn't overload shared storage.
+ * <p>
+ * Rate is limited by a token bucket which holds one second of operations, kept as the time
+ * next operation is allowed at, so threads take a slot with one compare-and-set and never lock.
+ * Concurrency is limited by a semaphore. If a target latency is given, mean latency of operations
+ * is checked every {@value #WINDOW_MILLIS} ms: rate is halved when it is above target,
+ * and raised by a tenth, up to the maximum, when it is not.
+ * <p>
+ * {@link #NONE} limits nothing, it is used when no throttle option is given.
+ */
+final class Throttle {
+
+	static final Throttle NONE = new Throttle(0, 0, 0);
+
+	private static final long WINDOW_MILLIS = 100;
+	private static final long WINDOW_NANOS = WINDOW_MILLIS * 1_000_000;
+	private static final long SECOND_NANOS = 1_000_000_000;
+	/**
+	 * Interval rate starts from when latency is above target and rate isn't limited, 10000 operations per second
+	 */
+	private static final long FIRST_BACKOFF_NANOS = 100_000;
+	/**
+	 * Longest interval after backing off, one operation per second
+	 */
+	private static final long MAX_INTERVAL_NANOS = SECOND_NANOS;
+
+	private final long minIntervalNanos;
+	private final long targetNanos;
+	private final Semaphore permits;
+	private final AtomicLong intervalNanos;
+	private final AtomicLong next = new AtomicLong(System.nanoTime());
+	private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+	private final LongAdder latencySum = new LongAdder();
+	private final LongAdder latencyCount = new LongAdder();
+
+	/**
+	 * @param maxOpsPerSecond max operations per second, 0 for no limit
+	 * @param maxConcurrency  max operations at the same time, 0 for no limit
+	 * @param targetMillis    latency rate is lowered above, 0 for fixed rate
+	 */
+	Throttle(long maxOpsPerSecond, int maxConcurrency, long targetMillis) {
+		this.minIntervalNanos = maxOpsPerSecond == 0 ? 0 : Math.max(1, SECOND_NANOS / maxOpsPerSecond);
+		this.targetNanos = targetMillis * 1_000_000;
+		this.permits = maxConcurrency == 0 ? null : new Semaphore(maxConcurrency);
+		this.intervalNanos = new AtomicLong(minIntervalNanos);
+	}
+
+	/**
+	 * wait until an operation is allowed, call {@link #release(long)} after it
+	 *
+	 * @return {@link System#nanoTime()} when operation is allowed
+	 */
+	long acquire() {
+		if (this == NONE) {
+			return System.nanoTime();
+		}
+		if (permits != null) {
+			permits.acquireUninterruptibly();
+		}
+		long interval = intervalNanos.get();
+		if (interval > 0) {
+			long now;
+			long slot;
+			while (true) {
+				now = System.nanoTime();
+				long previous = next.get();
+				// bucket is full after one second without operations
+				slot = Math.max(previous, now - SECOND_NANOS);
+				if (next.compareAndSet(previous, slot + interval)) {
+					break;
+				}
+			}
+			while (slot - now > 0) {
+				LockSupport.parkNanos(this, slot - now);
+				now = System.nanoTime();
+			}
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * end an operation, and adjust rate if target latency is given
+	 *
+	 * @param startNanos time returned by {@link #acquire()}
+	 */
+	void release(long startNanos) {
+		if (this == NONE) {
+			return;
+		}
+		if (permits != null) {
+			permits.release();
+		}
+		if (targetNanos == 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		latencySum.add(now - startNanos);
+		latencyCount.increment();
+		long start = windowStart.get();
+		if (now - start < WINDOW_NANOS || !windowStart.compareAndSet(start, now)) {
+			return;
+		}
+		// only the thread which closes the window adjusts rate
+		long count = latencyCount.sumThenReset();
+		long sum = latencySum.sumThenReset();
+		if (count == 0) {
+			return;
+		}
+		long interval = intervalNanos.get();
+		if (sum / count > targetNanos) {
+			interval = interval == 0 ? FIRST_BACKOFF_NANOS : Math.min(MAX_INTERVAL_NANOS, interval * 2);
+		} else {
+			interval = interval * 10 / 11;
+			if (interval < minIntervalNanos || minIntervalNanos == 0 && interval < FIRST_BACKOFF_NANOS / 10) {
+				interval = minIntervalNanos;
+			}
+		}
+		intervalNanos.set(interval);
+	}
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reads times of a tree without modifying anything, and reports how they are distributed.
+ * <p>
+ * Each thread of walker counts times in its own histograms, arrays of one bin per day from 1900 to 2200,
+ * times outside of them are counted in first or last bin. Histograms are merged once after the walk,
+ * so memory depends on number of threads, not on number of entries. Percentiles are start of their day,
+ * min and max are exact.
+ * <p>
+ * If a shift or target is given, new times of each entry are checked against range like a real run,
+ * and entries which would be out of range are counted. Only specified times are checked, all if none is.
+ */
+class TimeScan {
+
+	private static final String[] NAMES = {"lastModified", "access", "creation"};
+	private static final double[] PERCENTILES = {0.01, 0.1, 0.5, 0.9, 0.99};
+	private static final long SECONDS_PER_DAY = 86400;
+	private static final long ORIGIN = LocalDate.of(1900, 1, 1).toEpochDay() * SECONDS_PER_DAY;
+	private static final int BINS = (int) (LocalDate.of(2200, 1, 1).toEpochDay()
+			- LocalDate.of(1900, 1, 1).toEpochDay());
+
+	/**
+	 * Histograms and counters of one thread, only that thread writes them
+	 */
+	private static final class Counts {
+		final int[][] bins = new int[NAMES.length][BINS];
+		final long[] min = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+		final long[] max = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+		final long[] outOfRange = new long[NAMES.length];
+		long entries;
+		long outOfRangeEntries;
+	}
+
+	private final FileTimeMod fileTimeMod;
+	private final int parallelism;
+	private final boolean checkRange;
+	private final boolean[] selected;
+	private final PrintStream out;
+	private final ConcurrentLinkedQueue<Counts> all = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Counts> counts = ThreadLocal.withInitial(() -> {
+		Counts created = new Counts();
+		all.add(created);
+		return created;
+	});
+
+	/**
+	 * @param fileTimeMod shift or target new times are checked with, and filter of entries
+	 * @param parallelism number of entries read at the same time
+	 * @param checkRange  count entries whose new time would be out of range
+	 */
+	TimeScan(FileTimeMod fileTimeMod, int parallelism, boolean checkRange) {
+		this.fileTimeMod = fileTimeMod;
+		this.parallelism = parallelism;
+		this.checkRange = checkRange;
+		// range of all times is checked if none is specified
+		boolean any = fileTimeMod.core.modifyLastModified || fileTimeMod.core.modifyLastAccess || fileTimeMod.core.modifyCreation;
+		this.selected = new boolean[]{!any || fileTimeMod.core.modifyLastModified, !any || fileTimeMod.core.modifyLastAccess,
+				!any || fileTimeMod.core.modifyCreation};
+		this.out = fileTimeMod.out;
+	}
+
+	/**
+	 * read times of roots and all entries below them, then print report
+	 *
+	 * @param roots files or roots of trees
+	 * @throws IOException if attributes of any root can't be read
+	 */
+	void run(List<Path> roots) throws IOException {
+		Instant latest = Instant.now();
+		long unreadable = new TreeWalker(parallelism, fileTimeMod.err, fileTimeMod.filter,
+				(path, view) -> fileTimeMod.core.stat(path, view, LinkOption.NOFOLLOW_LINKS), fileTimeMod.secure,
+				fileTimeMod.storeParallelism).walk(roots, (path, attributes, view) -> count(attributes, latest));
+		long[][] bins = new long[NAMES.length][BINS];
+		print(merge(bins), bins, unreadable);
+	}
+
+	private void count(BasicFileAttributes attributes, Instant latest) {
+		Counts current = counts.get();
+		current.entries++;
+		boolean outOfRange = false;
+		outOfRange |= count(current, 0, attributes.lastModifiedTime(), latest);
+		outOfRange |= count(current, 1, attributes.lastAccessTime(), latest);
+		outOfRange |= count(current, 2, attributes.creationTime(), latest);
+		if (outOfRange) {
+			current.outOfRangeEntries++;
+		}
+	}
+
+	/**
+	 * @return true if new time would be out of range
+	 */
+	private boolean count(Counts current, int attribute, FileTime time, Instant latest) {
+		long seconds = time.to(TimeUnit.SECONDS);
+		current.bins[attribute][bin(seconds)]++;
+		current.min[attribute] = Math.min(current.min[attribute], seconds);
+		current.max[attribute] = Math.max(current.max[attribute], seconds);
+		if (checkRange && selected[attribute] && !FileTimeCore.inRange(fileTimeMod.core.newTime(time), latest)) {
+			current.outOfRange[attribute]++;
+			return true;
+		}
+		return false;
+	}
+
+	private static int bin(long seconds) {
+		long day = Math.floorDiv(seconds - ORIGIN, SECONDS_PER_DAY);
+		return (int) Math.max(0, Math.min(BINS - 1, day));
+	}
+
+	/**
+	 * merge counts of all threads, walk is done so no thread writes them any more
+	 *
+	 * @param bins merged histograms, one of each time
+	 * @return merged counters, its own histograms are empty
+	 */
+	private Counts merge(long[][] bins) {
+		Counts merged = new Counts();
+		for (Counts counts : all) {
+			merged.entries += counts.entries;
+			merged.outOfRangeEntries += counts.outOfRangeEntries;
+			for (int a = 0; a < NAMES.length; a++) {
+				merged.min[a] = Math.min(merged.min[a], counts.min[a]);
+				merged.max[a] = Math.max(merged.max[a], counts.max[a]);
+				merged.outOfRange[a] += counts.outOfRange[a];
+				int[] from = counts.bins[a];
+				long[] to = bins[a];
+				for (int i = 0; i < BINS; i++) {
+					to[i] += from[i];
+				}
+			}
+		}
+		return merged;
+	}
+
+	private void print(Counts total, long[][] bins, long unreadable) {
+		boolean json = fileTimeMod.outputMode == OutputSink.Mode.NDJSON;
+		StringBuilder report = new StringBuilder();
+		if (json) {
+			report.append("{\"entries\":").append(total.entries).append(",\"failed\":").append(unreadable);
+		} else {
+			report.append("scanned ").append(total.entries).append(" entries, ").append(unreadable)
+					.append(" entries can't be read\n");
+		}
+		for (int a = 0; a < NAMES.length && total.entries > 0; a++) {
+			if (json) {
+				report.append(",\"").append(NAMES[a]).append("\":{\"min\":\"").append(format(total.min[a]))
+						.append("\",\"max\":\"").append(format(total.max[a])).append('"');
+			} else {
+				report.append(NAMES[a]).append(": min ").append(format(total.min[a]));
+			}
+			for (double percentile : PERCENTILES) {
+				long seconds = percentile(bins[a], total.entries, percentile, total.min[a], total.max[a]);
+				String name = "p" + Math.round(percentile * 100);
+				if (json) {
+					report.append(",\"").append(name).append("\":\"").append(format(seconds)).append('"');
+				} else {
+					report.append(", ").append(name).append(' ').append(format(seconds));
+				}
+			}
+			if (json) {
+				if (checkRange && selected[a]) {
+					report.append(",\"outOfRange\":").append(total.outOfRange[a]);
+				}
+				report.append('}');
+			} else {
+				report.append(", max ").append(format(total.max[a]));
+				if (checkRange && selected[a]) {
+					report.append(", ").append(total.outOfRange[a]).append(" out of range after modified");
+				}
+				report.append('\n');
+			}
+		}
+		if (json) {
+			if (checkRange) {
+				report.append(",\"outOfRange\":").append(total.outOfRangeEntries);
+			}
+			report.append('}');
+		} else if (checkRange) {
+			report.append(total.outOfRangeEntries).append(" entries would be out of range after modified");
+		}
+		out.println(report.toString().stripTrailing());
+	}
+
+	/**
+	 * @return start of day of the bin which contains the entry at percentile, kept within min and max
+	 */
+	private static long percentile(long[] bins, long entries, double percentile, long min, long max) {
+		long rank = Math.max(1, (long) Math.ceil(percentile * entries));
+		long seen = 0;
+		for (int i = 0; i < bins.length; i++) {
+			seen += bins[i];
+			if (seen >= rank) {
+				return Math.max(min, Math.min(max, ORIGIN + i * SECONDS_PER_DAY));
+			}
+		}
+		return max;
+	}
+
+	private static String format(long seconds) {
+		return Instant.ofEpochSecond(seconds).toString();
+	}
+}
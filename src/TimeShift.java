@@ -0,0 +1,95 @@
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * This class is the change of file time given by year, month, day, hour, minute and second options.
+ * <p>
+ * Options are validated once when the shift is created and summed up to one signed
+ * nanosecond delta, so applying the shift to a file time is one addition and one allocation.
+ * Same as {@code FileTimeMod}, one year is 365 days and one month is 30 days.
+ */
+final class TimeShift {
+
+	static final TimeShift ZERO = new TimeShift(0L);
+
+	private static final Pattern NUMBER_PATTERN = Pattern.compile("[0-9]+");
+
+	/**
+	 * Option names, nanoseconds of one unit and max values, in order of {@code FileTimeMod.TimeUnit}
+	 */
+	static final String[] UNIT_OPTIONS = {"year", "month", "day", "hour", "minute", "second"};
+	private static final long[] UNIT_NANOS = {
+			TimeUnit.DAYS.toNanos(365),
+			TimeUnit.DAYS.toNanos(30),
+			TimeUnit.DAYS.toNanos(1),
+			TimeUnit.HOURS.toNanos(1),
+			TimeUnit.MINUTES.toNanos(1),
+			TimeUnit.SECONDS.toNanos(1)
+	};
+	private static final long[] UNIT_MAX = {
+			FileTimeMod.MAX_YEAR,
+			FileTimeMod.MAX_MONTH,
+			FileTimeMod.MAX_DAY,
+			FileTimeMod.MAX_HOUR,
+			FileTimeMod.MAX_MINUTE,
+			FileTimeMod.MAX_SECOND
+	};
+
+	private final long nanos;
+
+	private TimeShift(long nanos) {
+		this.nanos = nanos;
+	}
+
+	static TimeShift ofNanos(long nanos) {
+		return nanos == 0L ? ZERO : new TimeShift(nanos);
+	}
+
+	/**
+	 * create shift from value of each time unit
+	 *
+	 * @param operation increase or decrease
+	 * @param values    value of each time unit in order of {@code FileTimeMod.TimeUnit}, null if not given
+	 * @return shift of all values
+	 * @throws IllegalArgumentException if any value is not a number or beyond max value of its unit
+	 */
+	static TimeShift parse(FileTimeMod.OPERATION operation, String[] values) {
+		long total = 0L;
+		for (int i = 0; i < UNIT_OPTIONS.length; i++) {
+			String value = values[i];
+			if (value == null) {
+				continue;
+			}
+			// more than 10 digits is beyond every max value, check it before parsing to avoid overflow
+			if (value.length() > 10 || !NUMBER_PATTERN.matcher(value).matches()
+					|| Long.parseLong(value) > UNIT_MAX[i]) {
+				throw new IllegalArgumentException("invalid value of " + UNIT_OPTIONS[i] + ": " + value
+						+ ", it should be a number not more than " + UNIT_MAX[i]);
+			}
+			total += Long.parseLong(value) * UNIT_NANOS[i];
+		}
+		return ofNanos(operation == FileTimeMod.OPERATION.DECREASE ? -total : total);
+	}
+
+	long toNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @param fileTime file time needs to be shifted
+	 * @return file time after shifting
+	 */
+	FileTime apply(FileTime fileTime) {
+		if (nanos == 0L) {
+			return fileTime;
+		}
+		long time = fileTime.to(TimeUnit.NANOSECONDS);
+		long shifted = time + nanos;
+		// nanoseconds of file time saturate beyond year 2262, and the sum may overflow there
+		if (time == Long.MAX_VALUE || time == Long.MIN_VALUE || ((time ^ shifted) & (nanos ^ shifted)) < 0) {
+			return FileTime.from(fileTime.toInstant().plusNanos(nanos));
+		}
+		return FileTime.from(shifted, TimeUnit.NANOSECONDS);
+	}
+}
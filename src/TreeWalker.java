@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class is for walking a directory tree in parallel.
+ * <p>
+ * Each directory is listed by its own fork/join task, so entries of different
+ * directories are read and modified at the same time. Entries of a large directory are split into
+ * chunks, each read and modified by its own task. Symbolic links are not followed, they and special
+ * files like FIFOs, sockets and devices are not modified, whether they are roots or entries.
+ * <p>
+ * Entries are filtered by {@link EntryFilter}, excluded names are skipped before
+ * their attributes are read, so excluded directories cost no stat of their content.
+ * Attributes are read by an {@link AttributeReader}, so reads can be throttled and recorded.
+ * <p>
+ * In secure mode each directory is opened once as a {@link SecureDirectoryStream}, sub directories are
+ * opened relative to it, and entries are read and modified through views relative to it,
+ * so the kernel doesn't walk the whole path again for every call, and a directory renamed
+ * during the walk is still walked right. A directory stays open until its sub directories are done.
+ * Where the file system has no secure directory stream, paths are used as in default mode.
+ * <p>
+ * Each file store has its own pool of workers, so a slow mount doesn't take workers of a fast disk and
+ * each disk runs at its own concurrency. Roots are grouped by their store, and a sub directory on another
+ * device than its parent, a mount point, is handed to the pool of its store as a new root. Devices are
+ * taken from file keys of attributes read already, stores are only looked up at mount points.
+ */
+class TreeWalker {
+
+	/**
+	 * Action applied to every entry of the tree, including the root.
+	 * Attributes are read by walker already, so action doesn't need to read them again.
+	 * View is relative to the open directory of entry in secure mode, otherwise it is null and path is used.
+	 */
+	interface EntryAction {
+		void apply(Path path, BasicFileAttributes attributes, BasicFileAttributeView view) throws IOException;
+	}
+
+	/**
+	 * Reader of attributes of an entry, through view if it isn't null, links must not be followed
+	 */
+	interface AttributeReader {
+		BasicFileAttributes read(Path path, BasicFileAttributeView view) throws IOException;
+	}
+
+	/**
+	 * Number of entries of a directory read and modified by one task
+	 */
+	private static final int CHUNK_SIZE = 1024;
+	private static final Pattern DEVICE = Pattern.compile("dev=([0-9a-fA-Fx]+)");
+
+	private final int parallelism;
+	private final PrintStream err;
+	private final EntryFilter filter;
+	private final AttributeReader reader;
+	private final boolean secure;
+	private final Map<FileStore, Integer> storeParallelism;
+
+	/**
+	 * @param parallelism      number of entries processed at the same time on each file store
+	 * @param err              stream errors of single entries are printed to
+	 * @param filter           filter of entries action is applied to
+	 * @param reader           reader of attributes of each entry
+	 * @param secure           read and modify entries relative to open directories where it is supported
+	 * @param storeParallelism number of entries processed at the same time on given stores, instead of parallelism
+	 */
+	TreeWalker(int parallelism, PrintStream err, EntryFilter filter, AttributeReader reader, boolean secure,
+			   Map<FileStore, Integer> storeParallelism) {
+		this.parallelism = parallelism;
+		this.err = err;
+		this.filter = filter;
+		this.reader = reader;
+		this.secure = secure;
+		this.storeParallelism = storeParallelism;
+	}
+
+	/**
+	 * apply action to root and every entry below it, return after all entries are done
+	 *
+	 * @param root   root of tree
+	 * @param action action applied to each entry
+	 * @return number of entries failed, printed to error stream already
+	 * @throws IOException if attributes of root can't be read
+	 */
+	long walk(Path root, EntryAction action) throws IOException {
+		return walk(List.of(root), action);
+	}
+
+	/**
+	 * apply action to each root and every entry below them, trees on different file stores are walked
+	 * by different pools at the same time
+	 *
+	 * @param roots  roots of trees
+	 * @param action action applied to each entry
+	 * @return number of entries failed, printed to error stream already
+	 * @throws IOException if attributes or file store of any root can't be read, nothing is walked then
+	 */
+	long walk(List<Path> roots, EntryAction action) throws IOException {
+		List<BasicFileAttributes> rootAttributes = new ArrayList<>();
+		for (Path root : roots) {
+			rootAttributes.add(reader.read(root, null));
+		}
+		Walk walk = new Walk(this, action);
+		try {
+			for (int i = 0; i < roots.size(); i++) {
+				Path root = roots.get(i);
+				BasicFileAttributes attributes = rootAttributes.get(i);
+				Path name = root.getFileName() == null ? root : root.getFileName();
+				// a root is read without following links like every entry, so a link root is skipped as well
+				if (attributes.isSymbolicLink() || attributes.isOther()) {
+					continue;
+				}
+				if (filter.accept(name, attributes)) {
+					apply(root, attributes, null, action, err, walk.failed);
+				}
+				if (attributes.isDirectory()) {
+					walk.submit(Files.getFileStore(root), new DirectoryTask(walk, root, null, device(attributes), true));
+				}
+			}
+			walk.await();
+		} finally {
+			walk.shutdown();
+		}
+		walk.rethrow();
+		return walk.failed.sum();
+	}
+
+	/**
+	 * get device from file key of attributes which are read already, it is shown by file keys of Unix
+	 *
+	 * @return device of entry, or null if file key doesn't show it
+	 */
+	private static String device(BasicFileAttributes attributes) {
+		Object key = attributes.fileKey();
+		if (key == null) {
+			return null;
+		}
+		Matcher matcher = DEVICE.matcher(key.toString());
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	private static void apply(Path path, BasicFileAttributes attributes, BasicFileAttributeView view,
+							  EntryAction action, PrintStream err, LongAdder failed) {
+		try {
+			action.apply(path, attributes, view);
+		} catch (IOException e) {
+			err.println("Modify file time failed: " + path + " " + e.getMessage());
+			failed.increment();
+		}
+	}
+
+	/**
+	 * State of one walk: pools of file stores, and trees which are not done yet
+	 */
+	private static final class Walk {
+		private final TreeWalker walker;
+		private final EntryAction action;
+		private final LongAdder failed = new LongAdder();
+		private final Map<FileStore, ForkJoinPool> pools = new ConcurrentHashMap<>();
+		/**
+		 * walking thread and one party for each submitted tree
+		 */
+		private final Phaser pending = new Phaser(1);
+		/**
+		 * unexpected exceptions of submitted trees, nobody joins them
+		 */
+		private final Queue<Throwable> exceptions = new ConcurrentLinkedQueue<>();
+
+		Walk(TreeWalker walker, EntryAction action) {
+			this.walker = walker;
+			this.action = action;
+		}
+
+		/**
+		 * walk tree of task in pool of store, without waiting for it
+		 */
+		void submit(FileStore store, DirectoryTask task) {
+			ForkJoinPool pool = pools.computeIfAbsent(store,
+					key -> new ForkJoinPool(walker.storeParallelism.getOrDefault(key, walker.parallelism)));
+			pending.register();
+			pool.execute(task);
+		}
+
+		void await() {
+			pending.arriveAndAwaitAdvance();
+		}
+
+		/**
+		 * throw first unexpected exception of any tree, others are suppressed by it
+		 */
+		void rethrow() {
+			Throwable first = exceptions.poll();
+			if (first == null) {
+				return;
+			}
+			for (Throwable other = exceptions.poll(); other != null; other = exceptions.poll()) {
+				first.addSuppressed(other);
+			}
+			if (first instanceof Error error) {
+				throw error;
+			}
+			throw (RuntimeException) first;
+		}
+
+		void shutdown() {
+			for (ForkJoinPool pool : pools.values()) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Task for one directory, it modifies entries of the directory
+	 * and forks a new task for each sub directory on the same device.
+	 */
+	private static class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Walk walk;
+		private final Path directory;
+		/**
+		 * Open parent directory this directory is opened relative to, null if it is opened by path
+		 */
+		private final SecureDirectoryStream<Path> parent;
+		/**
+		 * Device of this directory, null if it is unknown
+		 */
+		private final String device;
+		/**
+		 * true if this task was submitted to a pool, false if it was forked by its parent
+		 */
+		private final boolean root;
+
+		DirectoryTask(Walk walk, Path directory, SecureDirectoryStream<Path> parent, String device, boolean root) {
+			this.walk = walk;
+			this.directory = directory;
+			this.parent = parent;
+			this.device = device;
+			this.root = root;
+		}
+
+		private DirectoryStream<Path> open() throws IOException {
+			if (parent != null) {
+				return parent.newDirectoryStream(directory.getFileName(), LinkOption.NOFOLLOW_LINKS);
+			}
+			return Files.newDirectoryStream(directory);
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				walk();
+			} catch (RuntimeException | Error e) {
+				if (!root) {
+					throw e;
+				}
+				walk.exceptions.add(e);
+			} finally {
+				// root of a tree is done when all of its sub directories on same device are done
+				if (root) {
+					walk.pending.arriveAndDeregister();
+				}
+			}
+		}
+
+		private void walk() {
+			TreeWalker walker = walk.walker;
+			List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = open()) {
+				SecureDirectoryStream<Path> opened = walker.secure
+						&& entries instanceof SecureDirectoryStream<Path> secureEntries ? secureEntries : null;
+				// listing is serial, entries of a large directory are read and modified by chunk tasks
+				List<Path> chunk = new ArrayList<>();
+				for (Path entry : entries) {
+					if (!walker.filter.acceptName(entry.getFileName())) {
+						continue;
+					}
+					chunk.add(entry);
+					if (chunk.size() == CHUNK_SIZE) {
+						ChunkTask chunkTask = new ChunkTask(this, chunk, opened);
+						chunkTask.fork();
+						subTasks.add(chunkTask);
+						chunk = new ArrayList<>();
+					}
+				}
+				apply(chunk, opened, subTasks);
+				if (opened != null) {
+					// sub directories are opened relative to this one, keep it open until they are done
+					join(subTasks);
+				}
+			} catch (IOException e) {
+				walker.err.println("List directory failed: " + directory + " " + e.getMessage());
+				walk.failed.increment();
+			}
+			join(subTasks);
+		}
+
+		/**
+		 * read and modify entries of this directory, and fork tasks of sub directories
+		 */
+		private void apply(List<Path> entries, SecureDirectoryStream<Path> opened, List<ForkJoinTask<?>> subTasks) {
+			TreeWalker walker = walk.walker;
+			EntryFilter filter = walker.filter;
+			PrintStream err = walker.err;
+			for (Path entry : entries) {
+				Path name = entry.getFileName();
+				BasicFileAttributeView view = opened == null ? null
+						: opened.getFileAttributeView(name, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+				BasicFileAttributes attributes;
+				try {
+					attributes = walker.reader.read(entry, view);
+				} catch (IOException e) {
+					err.println("Get file time failed: " + entry + " " + e.getMessage());
+					walk.failed.increment();
+					continue;
+				}
+				// writing times of a FIFO, socket or device opens it, which may block forever
+				if (attributes.isSymbolicLink() || attributes.isOther()) {
+					continue;
+				}
+				if (attributes.isDirectory()) {
+					fork(entry, device(attributes), opened, subTasks);
+				}
+				if (filter.accept(name, attributes)) {
+					TreeWalker.apply(entry, attributes, view, walk.action, err, walk.failed);
+				}
+			}
+		}
+
+		/**
+		 * fork task of sub directory, or hand it to pool of its store if it is a mount point
+		 */
+		private void fork(Path entry, String entryDevice, SecureDirectoryStream<Path> opened,
+						  List<ForkJoinTask<?>> subTasks) {
+			if (device != null && entryDevice != null && !entryDevice.equals(device)) {
+				try {
+					walk.submit(Files.getFileStore(entry), new DirectoryTask(walk, entry, null, entryDevice, true));
+					return;
+				} catch (IOException e) {
+					// store can't be read, walk it in this pool
+				}
+			}
+			DirectoryTask subTask = new DirectoryTask(walk, entry, opened, device, false);
+			subTask.fork();
+			subTasks.add(subTask);
+		}
+
+		private static void join(List<ForkJoinTask<?>> subTasks) {
+			for (ForkJoinTask<?> subTask : subTasks) {
+				subTask.join();
+			}
+		}
+	}
+
+	/**
+	 * Task for a chunk of entries of one large directory, it joins sub directories it forked
+	 */
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final DirectoryTask owner;
+		private final List<Path> entries;
+		private final SecureDirectoryStream<Path> opened;
+
+		ChunkTask(DirectoryTask owner, List<Path> entries, SecureDirectoryStream<Path> opened) {
+			this.owner = owner;
+			this.entries = entries;
+			this.opened = opened;
+		}
+
+		@Override
+		protected void compute() {
+			List<ForkJoinTask<?>> subTasks = new ArrayList<>();
+			owner.apply(entries, opened, subTasks);
+			DirectoryTask.join(subTasks);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class modifies files as soon as they arrive in a directory tree, until it is interrupted.
+ * <p>
+ * Root and every directory below it are registered to a {@link WatchService}, new directories are
+ * registered when they are created, and files already in them are taken as new. Events are collected
+ * until none comes for a quiet period, or a batch is full, so a file written in many steps is modified
+ * once, after it is written. Only regular files are modified, files already in the tree when watching
+ * starts are not.
+ * <p>
+ * Writing times of a file makes an event of it too. Last modified time of each file is remembered
+ * after it is modified, an event of a file which still has that time is its own write and is ignored,
+ * a file which has another time was changed again and is modified again. Events of own writes are
+ * collected by the next batch at the latest, so a file is forgotten once a later batch is collected,
+ * and memory is bounded by size of batches.
+ * <p>
+ * If events overflow, files of the tree which were changed since the previous batch was collected are
+ * taken as new, older files were either there before watching started or are done already.
+ */
+class WatchMode {
+
+	private static final int MAX_BATCH = 10000;
+	/**
+	 * Allowance for coarse file system clocks when last modified time is compared with current time
+	 */
+	private static final Duration SLACK = Duration.ofSeconds(1);
+
+	/**
+	 * Last modified time of a file after it was modified, and when it was modified
+	 */
+	private record Written(FileTime lastModified, Instant time) {
+	}
+
+	private final FileTimeMod fileTimeMod;
+	private final int parallelism;
+	private final long quietMillis;
+	private final PrintStream err;
+	/**
+	 * Each file modified by recent batches
+	 */
+	private final Map<Path, Written> modified = new ConcurrentHashMap<>();
+	/**
+	 * When the last batch was collected, watching start before the first one
+	 */
+	private Instant collected;
+
+	/**
+	 * @param fileTimeMod shift or target, selected times and filter to apply
+	 * @param parallelism number of files of a batch modified at the same time
+	 * @param quietMillis time without events after which a batch is modified
+	 */
+	WatchMode(FileTimeMod fileTimeMod, int parallelism, long quietMillis) {
+		this.fileTimeMod = fileTimeMod;
+		this.parallelism = parallelism;
+		this.quietMillis = quietMillis;
+		this.err = fileTimeMod.err;
+	}
+
+	/**
+	 * watch root and modify files arriving below it, return when current thread is interrupted
+	 *
+	 * @param root root directory of tree
+	 * @throws IOException if root can't be watched
+	 */
+	void run(Path root) throws IOException {
+		if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+			throw new IOException("watched path must be a directory: " + root);
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (WatchService watcher = root.getFileSystem().newWatchService();
+			 OutputSink sink = new OutputSink(fileTimeMod.out)) {
+			fileTimeMod.sink = sink;
+			collected = Instant.now();
+			register(watcher, root, null, null);
+			Set<Path> batch = new LinkedHashSet<>();
+			while (true) {
+				WatchKey key = watcher.take();
+				while (key != null) {
+					collect(watcher, root, key, batch);
+					key = batch.size() < MAX_BATCH ? watcher.poll(quietMillis, TimeUnit.MILLISECONDS) : null;
+				}
+				// events of writes before the previous batch was collected are all taken now
+				Instant previous = collected.minus(SLACK);
+				modified.values().removeIf(written -> written.time().isBefore(previous));
+				collected = Instant.now();
+				List<Path> files = new ArrayList<>(batch);
+				batch.clear();
+				pool.submit(() -> files.parallelStream().forEach(this::apply)).join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			fileTimeMod.sink = null;
+			pool.shutdown();
+		}
+	}
+
+	private void collect(WatchService watcher, Path root, WatchKey key, Set<Path> batch) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// events are lost, take files changed since last batch as new, own writes are ignored
+				err.println("Watch events overflowed, scanning " + root + " again");
+				register(watcher, root, batch, FileTime.from(collected.minus(SLACK)));
+				continue;
+			}
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				modified.remove(path);
+				batch.remove(path);
+			} else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+					&& Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+				register(watcher, path, batch, null);
+			} else {
+				batch.add(path);
+			}
+		}
+		key.reset();
+	}
+
+	/**
+	 * register directory and all directories below it, and add files in them to batch if it isn't null
+	 *
+	 * @param changedSince only files last modified at or after it are added, all if it is null
+	 */
+	private void register(WatchService watcher, Path directory, Set<Path> batch, FileTime changedSince) {
+		try {
+			Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+					if (!dir.equals(directory) && !fileTimeMod.filter.acceptName(dir.getFileName())) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (batch != null && attributes.isRegularFile()
+							&& (changedSince == null || attributes.lastModifiedTime().compareTo(changedSince) >= 0)) {
+						batch.add(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					if (!(e instanceof NoSuchFileException) && !(e instanceof FileSystemLoopException)) {
+						err.println("Get file time failed: " + file + " " + e.getMessage());
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			err.println("Watch directory failed: " + directory + " " + e.getMessage());
+		}
+	}
+
+	private void apply(Path path) {
+		try {
+			Path name = path.getFileName();
+			if (!fileTimeMod.filter.acceptName(name)) {
+				return;
+			}
+			BasicFileAttributes attributes = fileTimeMod.core.stat(path, LinkOption.NOFOLLOW_LINKS);
+			if (!attributes.isRegularFile() || !fileTimeMod.filter.accept(name, attributes)) {
+				return;
+			}
+			Written written = modified.get(path);
+			if (written != null && attributes.lastModifiedTime().equals(written.lastModified())) {
+				// event of own write
+				return;
+			}
+			fileTimeMod.modifyFile(path, attributes, true);
+			modified.put(path, new Written(fileTimeMod.core.stat(path, LinkOption.NOFOLLOW_LINKS).lastModifiedTime(),
+					Instant.now()));
+		} catch (NoSuchFileException e) {
+			// file is gone before batch is modified
+		} catch (IOException e) {
+			err.println("Modify file time failed: " + path + " " + e.getMessage());
+		}
+	}
+}